@@ -0,0 +1,246 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Metadati di accesso di una classe, utilizzati da {@link ReflectionUtil}.
+ * <p>
+ * Ogni coppia (classe, nome) &egrave; risolta una sola volta: getter e setter in un {@link MethodHandle}, i metodi nel {@link Method}.
+ * Anche le ricerche senza esito sono memorizzate, cos&igrave; che non siano ripetute.
+ * <br>
+ * Thread-safe.
+ */
+final class ClassAccessors {
+
+	/** Indicatore dei metodi non presenti */
+	private static final Object MISSING = new Object();
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	/** I metadati, per classe */
+	private static final ClassValue<ClassAccessors> ACCESSORS = new ClassValue<ClassAccessors>() {
+		@Override
+		protected ClassAccessors computeValue(Class<?> type) {
+			return new ClassAccessors(type);
+		}
+	};
+
+	private final Class<?> type;
+	private final ConcurrentMap<String, Accessor> getters = new ConcurrentHashMap<String, Accessor>();
+	private final ConcurrentMap<String, Accessor> booleanGetters = new ConcurrentHashMap<String, Accessor>();
+	private final ConcurrentMap<String, Accessor> setters = new ConcurrentHashMap<String, Accessor>();
+	private final ConcurrentMap<MethodKey, Object> methods = new ConcurrentHashMap<MethodKey, Object>();
+
+	private ClassAccessors(Class<?> type) {
+		this.type = type;
+	}
+
+	/**
+	 * Ottiene i metadati della classe.
+	 * @param type la classe
+	 * @return i metadati della classe
+	 */
+	static ClassAccessors of(Class<?> type) {
+		return ACCESSORS.get(type);
+	}
+
+	/**
+	 * Ottiene il getter del campo, <code>get</code> seguito dal nome del campo.
+	 * @param fieldName il nome del campo
+	 * @return l'accessor
+	 */
+	Accessor getter(String fieldName) {
+		Accessor accessor = getters.get(fieldName);
+		if(accessor == null) {
+			String getterName = "get" + StringUtils.capitalize(fieldName);
+			Method getter = ReflectionUtils.findMethod(type, getterName);
+			accessor = cache(getters, fieldName, newAccessor(getter, getterName, GETTER_TYPE));
+		}
+		return accessor;
+	}
+
+	/**
+	 * Ottiene il getter del campo booleano: <code>get</code>, o altrimenti <code>is</code>, seguito dal nome del campo.
+	 * @param fieldName il nome del campo
+	 * @return l'accessor
+	 */
+	Accessor booleanGetter(String fieldName) {
+		Accessor accessor = booleanGetters.get(fieldName);
+		if(accessor == null) {
+			String getterName = "get" + StringUtils.capitalize(fieldName);
+			Method getter = ReflectionUtils.findMethod(type, getterName);
+			if(getter == null) {
+				// Essendo un boolean potrei avere isMetodo...
+				getterName = "is" + StringUtils.capitalize(fieldName);
+				getter = ReflectionUtils.findMethod(type, getterName);
+			}
+			accessor = cache(booleanGetters, fieldName, newAccessor(getter, getterName, GETTER_TYPE));
+		}
+		return accessor;
+	}
+
+	/**
+	 * Ottiene il setter del campo, con parametro del tipo del campo.
+	 * @param fieldName il nome del campo
+	 * @return l'accessor
+	 */
+	Accessor setter(String fieldName) {
+		Accessor accessor = setters.get(fieldName);
+		if(accessor == null) {
+			String setterName = ReflectionUtil.buildSetterName(fieldName);
+			Field field = ReflectionUtils.findField(type, fieldName);
+			Method setter = field != null ? ReflectionUtils.findMethod(type, setterName, field.getType()) : null;
+			accessor = cache(setters, fieldName, newAccessor(setter, setterName, SETTER_TYPE));
+		}
+		return accessor;
+	}
+
+	/**
+	 * Ottiene il metodo pubblico, come {@link Class#getMethod(String, Class...)}.
+	 * @param methodName il nome del metodo
+	 * @param parameters i parametri del metodo
+	 * @return il metodo, se presente; <code>null</code> altrimenti
+	 * @throws SecurityException nel caso in cui l'accesso al metodo non sia consentito
+	 */
+	Method findMethod(String methodName, Class<?>... parameters) {
+		MethodKey key = new MethodKey(methodName, parameters);
+		Object method = methods.get(key);
+		if(method == null) {
+			try {
+				method = type.getMethod(methodName, parameters);
+			} catch (NoSuchMethodException e) {
+				method = MISSING;
+			}
+			Object existing = methods.putIfAbsent(key.copy(), method);
+			if(existing != null) {
+				method = existing;
+			}
+		}
+		return method != MISSING ? (Method) method : null;
+	}
+
+	private static Accessor cache(ConcurrentMap<String, Accessor> accessors, String fieldName, Accessor accessor) {
+		Accessor existing = accessors.putIfAbsent(fieldName, accessor);
+		return existing != null ? existing : accessor;
+	}
+
+	private Accessor newAccessor(Method method, String methodName, MethodType methodType) {
+		if(method == null) {
+			return new Accessor(null, "Metodo " + type.getName() + "#" + methodName + " non presente");
+		}
+		try {
+			return new Accessor(MethodHandles.publicLookup().unreflect(method).asType(methodType), null);
+		} catch (IllegalAccessException e) {
+			return new Accessor(null, "Metodo " + type.getName() + "#" + methodName + " non accessibile");
+		}
+	}
+
+	/**
+	 * Accessor di un campo: il getter o il setter, o il motivo per cui non &egrave; utilizzabile.
+	 */
+	static final class Accessor {
+		private final MethodHandle handle;
+		private final String failure;
+
+		Accessor(MethodHandle handle, String failure) {
+			this.handle = handle;
+			this.failure = failure;
+		}
+
+		/**
+		 * Invoca il getter.
+		 * @param obj l'oggetto
+		 * @return il valore ritornato dal getter
+		 * @throws IllegalArgumentException nel caso in cui il getter non sia utilizzabile
+		 */
+		Object get(Object obj) {
+			checkUsable();
+			try {
+				return (Object) handle.invokeExact(obj);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		}
+
+		/**
+		 * Invoca il setter.
+		 * @param obj   l'oggetto
+		 * @param value il valore da impostare
+		 * @throws IllegalArgumentException nel caso in cui il setter non sia utilizzabile
+		 */
+		void set(Object obj, Object value) {
+			checkUsable();
+			try {
+				handle.invokeExact(obj, value);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		}
+
+		private void checkUsable() {
+			if(handle == null) {
+				throw new IllegalArgumentException(failure);
+			}
+		}
+	}
+
+	/**
+	 * Chiave di un metodo: il nome e i tipi dei parametri. L'array dei parametri non &egrave; copiato nelle ricerche.
+	 */
+	private static final class MethodKey {
+		private final String name;
+		private final Class<?>[] parameters;
+		private final int hash;
+
+		MethodKey(String name, Class<?>[] parameters) {
+			this.name = name;
+			this.parameters = parameters != null ? parameters : new Class<?>[0];
+			this.hash = name.hashCode() * 31 + Arrays.hashCode(this.parameters);
+		}
+
+		/**
+		 * @return la chiave da memorizzare, indipendente dall'array dei parametri del chiamante
+		 */
+		MethodKey copy() {
+			return new MethodKey(name, parameters.clone());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof MethodKey)) {
+				return false;
+			}
+			MethodKey other = (MethodKey) obj;
+			return name.equals(other.name) && Arrays.equals(parameters, other.parameters);
+		}
+	}
+
+}
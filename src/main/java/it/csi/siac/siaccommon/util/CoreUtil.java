@@ -29,6 +29,7 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 import org.springframework.core.GenericTypeResolver;
 
 import it.csi.siac.siaccommon.util.collections.Function;
+import it.csi.siac.siaccommon.util.jaxb.JAXBContextRegistry;
 import it.csi.siac.siaccommon.util.log.LogUtil;
 
 public class CoreUtil {
@@ -121,14 +122,17 @@ public class CoreUtil {
 		if (obj == null) {
 			return null;
 		}
-		JAXBContext context = JAXBContext.newInstance(obj.getClass());
-		Marshaller marshaller = context.createMarshaller();
-		marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-		StringWriter sw = new StringWriter();
-		@SuppressWarnings({ "rawtypes", "unchecked" })
-		JAXBElement jx = new JAXBElement(new QName(obj.getClass().getSimpleName()), obj.getClass(), obj);
-		marshaller.marshal(jx, sw);
-		return sw.toString();
+		JAXBContext context = JAXBContextRegistry.getContext(obj.getClass());
+		Marshaller marshaller = JAXBContextRegistry.acquireMarshaller(context);
+		try {
+			StringWriter sw = new StringWriter();
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			JAXBElement jx = new JAXBElement(new QName(obj.getClass().getSimpleName()), obj.getClass(), obj);
+			marshaller.marshal(jx, sw);
+			return sw.toString();
+		} finally {
+			JAXBContextRegistry.releaseMarshaller(context, marshaller);
+		}
 
 	}
 
@@ -137,11 +141,14 @@ public class CoreUtil {
 		if (source == null) {
 			return null;
 		}
-		JAXBContext context = JAXBContext.newInstance(clazz);
-		Unmarshaller unmarshaller = context.createUnmarshaller();
-
-		StringReader sr = new StringReader(source);
-		return (T) unmarshaller.unmarshal(sr);
+		JAXBContext context = JAXBContextRegistry.getContext(clazz);
+		Unmarshaller unmarshaller = JAXBContextRegistry.acquireUnmarshaller(context);
+		try {
+			StringReader sr = new StringReader(source);
+			return (T) unmarshaller.unmarshal(sr);
+		} finally {
+			JAXBContextRegistry.releaseUnmarshaller(context, unmarshaller);
+		}
 
 	}
 
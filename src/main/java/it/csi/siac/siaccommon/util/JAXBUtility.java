@@ -4,21 +4,34 @@
 */
 package it.csi.siac.siaccommon.util;
 
+import java.beans.Introspector;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.StringReader;
 
-import javax.xml.XMLConstants;
-import javax.xml.bind.JAXB;
+import javax.xml.bind.DataBindingException;
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.util.ValidationEventCollector;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 
+import org.apache.commons.io.IOUtils;
 import org.xml.sax.SAXException;
 
+import it.csi.siac.siaccommon.util.clone.DeepCloner;
+import it.csi.siac.siaccommon.util.collections.Predicate;
+import it.csi.siac.siaccommon.util.jaxb.JAXBContextRegistry;
+import it.csi.siac.siaccommon.util.jaxb.StreamingUnmarshaller;
+import it.csi.siac.siaccommon.util.xml.SchemaRegistry;
+
 /**
  * Utiliti per il marshall e unmarshall di oggetti JAXB annotati con \@XmlType
  * 
@@ -30,51 +43,107 @@ public class JAXBUtility {
 	private JAXBUtility() {
 		// Prevent instantiation
 	}
+	/**
+	 * Marshall dell'oggetto, come {@link javax.xml.bind.JAXB#marshal(Object, java.io.OutputStream)} ma con il contesto in cache
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public static String marshall(Object obj) {
 		if (obj == null) {
 			return null;
 		}
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		JAXB.marshal(obj, baos);
+		Object element = obj;
+		Class<?> cls = obj.getClass();
+		if (obj instanceof JAXBElement) {
+			cls = ((JAXBElement<?>) obj).getDeclaredType();
+		} else if (cls.getAnnotation(XmlRootElement.class) == null) {
+			// Nome dell'elemento radice dedotto dalla classe, come da JAXB
+			element = new JAXBElement(new QName(Introspector.decapitalize(cls.getSimpleName())), cls, obj);
+		}
+		try {
+			JAXBContext context = JAXBContextRegistry.getContext(cls);
+			Marshaller marshaller = JAXBContextRegistry.acquireMarshaller(context);
+			try {
+				marshaller.marshal(element, baos);
+			} finally {
+				JAXBContextRegistry.releaseMarshaller(context, marshaller);
+			}
+		} catch (JAXBException e) {
+			throw new DataBindingException(e);
+		}
 		return baos.toString();
 
 	}
 
+	/**
+	 * Unmarshall dell'xml, come {@link javax.xml.bind.JAXB#unmarshal(java.io.InputStream, Class)} ma con il contesto in cache
+	 */
 	public static <T> T unmarshall(String xml, Class<T> clazz) {
 		if (xml == null) {
 			return null;
 		}
 		ByteArrayInputStream bais = new ByteArrayInputStream(xml.getBytes());
-		return JAXB.unmarshal(bais, clazz);
+		try {
+			JAXBContext context = JAXBContextRegistry.getContext(clazz);
+			Unmarshaller unmarshaller = JAXBContextRegistry.acquireUnmarshaller(context);
+			try {
+				return unmarshaller.unmarshal(new StreamSource(bais), clazz).getValue();
+			} finally {
+				JAXBContextRegistry.releaseUnmarshaller(context, unmarshaller);
+			}
+		} catch (JAXBException e) {
+			throw new DataBindingException(e);
+		}
 	}
 	
-	@SuppressWarnings("unchecked")
-	public static <T> T clone(T obj) {
-		if(obj == null) {
-			// Null-safe
-			return null;
+	/**
+	 * Unmarshall in streaming degli elementi ripetuti di un documento xml, uno alla volta, senza caricare il documento in memoria
+	 * 
+	 * @param xml il documento, chiuso al termine
+	 * @param clazz la classe degli elementi
+	 * @param elementName il nome locale degli elementi
+	 * @param predicate il consumatore degli elementi
+	 */
+	public static <T> void unmarshallEach(InputStream xml, Class<T> clazz, String elementName, Predicate<T> predicate) {
+		StreamingUnmarshaller<T> unmarshaller;
+		try {
+			unmarshaller = new StreamingUnmarshaller<T>(xml, clazz, elementName);
+		} catch (JAXBException e) {
+			IOUtils.closeQuietly(xml);
+			throw new DataBindingException(e);
+		} catch (XMLStreamException e) {
+			IOUtils.closeQuietly(xml);
+			throw new DataBindingException(e);
 		}
-		String xml = marshall(obj);
-		return (T) unmarshall(xml, obj.getClass());
+		unmarshaller.parse(predicate);
+	}
+
+	/**
+	 * Deep clones the object through {@link DeepCloner}, without the round-trip through XML:
+	 * the fields not mapped by JAXB are copied as well.
+	 */
+	public static <T> T clone(T obj) {
+		return DeepCloner.clone(obj);
 	}
 
 	@SuppressWarnings("unchecked")
 	public static <T> T unmarshal(String xml, String xsd,
 			ValidationEventCollector validationEventCollector, Class<T> cls) throws JAXBException,
 			SAXException {
-		JAXBContext context = JAXBContext.newInstance(cls);
-		Unmarshaller unmarshaller = context.createUnmarshaller();
-
-		if (xsd != null) {
-			SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-
-			Schema schema = sf.newSchema(cls.getResource(xsd));
-			unmarshaller.setSchema(schema);
-
-			unmarshaller.setEventHandler(validationEventCollector);
+		JAXBContext context = JAXBContextRegistry.getContext(cls);
+		Unmarshaller unmarshaller = JAXBContextRegistry.acquireUnmarshaller(context);
+		try {
+			if (xsd != null) {
+				Schema schema = SchemaRegistry.getSchema(cls.getResource(xsd));
+				unmarshaller.setSchema(schema);
+	
+				unmarshaller.setEventHandler(validationEventCollector);
+			}
+			
+			return (T) unmarshaller.unmarshal(new StringReader(xml));
+		} finally {
+			JAXBContextRegistry.releaseUnmarshaller(context, unmarshaller);
 		}
-		
-		return (T) unmarshaller.unmarshal(new StringReader(xml));
 	}
 
 }
@@ -4,11 +4,6 @@
 */
 package it.csi.siac.siaccommon.util;
 
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -17,10 +12,9 @@ import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.beanutils.BeanUtilsBean;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.util.ReflectionUtils;
 
+import it.csi.siac.siaccommon.util.clone.DeepCloner;
 import it.csi.siac.siaccommon.util.log.LogUtil;
 
 /**
@@ -86,10 +80,7 @@ public final class ReflectionUtil {
 	 */
 	public static void setField(Object obj, String fieldName, Object fieldValue) {
 		try {
-			String setterName = buildSetterName(fieldName);
-			Field field = ReflectionUtils.findField(obj.getClass(), fieldName);
-			Method setter = ReflectionUtils.findMethod(obj.getClass(), setterName, field.getType());
-			ReflectionUtils.invokeMethod(setter, obj, fieldValue);
+			ClassAccessors.of(obj.getClass()).setter(fieldName).set(obj, fieldValue);
 		} catch(RuntimeException e) {
 			throw new UnsupportedOperationException("Il metodo non e' applicabile", e);
 		}
@@ -148,9 +139,7 @@ public final class ReflectionUtil {
 	@SuppressWarnings("unchecked")
 	public static <T> T getField(Object obj, String fieldName, Class<T> clazz) {
 		try {
-			String getterName = "get" + StringUtils.capitalize(fieldName);
-			Method getter = ReflectionUtils.findMethod(obj.getClass(), getterName);
-			return (T) ReflectionUtils.invokeMethod(getter, obj);
+			return (T) ClassAccessors.of(obj.getClass()).getter(fieldName).get(obj);
 		} catch(Exception e) {
 			throw new UnsupportedOperationException("Il metodo non e' applicabile", e);
 		}
@@ -181,14 +170,7 @@ public final class ReflectionUtil {
 	 */
 	public static Boolean getBooleanField(Object obj, String fieldName) {
 		try {
-			String getterName = "get" + StringUtils.capitalize(fieldName);
-			Method getter = ReflectionUtils.findMethod(obj.getClass(), getterName);
-			if(getter == null) {
-				// Essendo un boolean potrei avere isMetodo...
-				getterName = "is" + StringUtils.capitalize(fieldName);
-				getter = ReflectionUtils.findMethod(obj.getClass(), getterName);
-			}
-			return (Boolean) ReflectionUtils.invokeMethod(getter, obj);
+			return (Boolean) ClassAccessors.of(obj.getClass()).booleanGetter(fieldName).get(obj);
 		} catch(Exception e) {
 			throw new UnsupportedOperationException("Il metodo non e' applicabile", e);
 		}
@@ -214,30 +196,15 @@ public final class ReflectionUtil {
 	
 	/**
 	 * Effettua una clonazione forte dell'oggetto.
+	 * <br>
+	 * La clonazione copia i campi dell'oggetto tramite {@link DeepCloner}; se il grafo contiene classi non copiabili campo per campo,
+	 * l'intero oggetto &egrave; clonato per serializzazione, o tramite <code>XMLEncoder</code>.
 	 * @param <T> la tipizzazione dell'oggetto da clonare
 	 * @param source l'oggetto di partenza
 	 * @return una copia dell'oggetto di partenza
 	 */
-	@SuppressWarnings("unchecked")
 	public static <T> T deepClone(T source) {
-		// Caso limite
-		if(source == null) {
-			return null;
-		}
-		if(source instanceof Serializable) {
-			return (T) SerializationUtils.clone((Serializable)source);
-		}
-		
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		XMLEncoder out = new XMLEncoder(bos);
-		out.writeObject(source);
-		out.close();
-		ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
-		XMLDecoder in = new XMLDecoder(bis);
-		
-		T result = (T) in.readObject();
-		in.close();
-		return result;
+		return DeepCloner.clone(source);
 	}
 	
 	/**
@@ -250,15 +217,15 @@ public final class ReflectionUtil {
 	 * @return <code>true</code> se l'oggetto possiede il metodo; <code>false</code> in caso contrario
 	 */
 	public static boolean hasMethod(Object source, String methodName, Class<?>... parameters) {
-		boolean existantMethod = false;
+		if(source == null) {
+			return false;
+		}
 		try {
-			source.getClass().getMethod(methodName, parameters);
-			existantMethod = true;
-		} catch (Exception e) {
+			return ClassAccessors.of(source.getClass()).findMethod(methodName, parameters) != null;
+		} catch (SecurityException e) {
 			LOG.error("hasMethod", "Errore nella ricerca del metodo", e);
+			return false;
 		}
-		
-		return existantMethod;
 	}
 	
 	/**
@@ -443,13 +410,17 @@ public final class ReflectionUtil {
 	 * @throws NullPointerException     nel caso in cui il parametro source sia <code>null</code>
 	 */
 	public static Method silentlyFindMethod(Class<?> clazz, String methodName, Class<?>... classes) {
+		Method method;
 		try {
-			return clazz.getMethod(methodName, classes);
+			method = ClassAccessors.of(clazz).findMethod(methodName, classes);
 		} catch (SecurityException e) {
 			throw new IllegalArgumentException("SecurityException in obtaining method " + clazz.getSimpleName() + "#" + methodName + "()", e);
-		} catch (NoSuchMethodException e) {
-			throw new IllegalArgumentException("NoSuchMethodException in obtaining method " + clazz.getSimpleName() + "#" + methodName + "()", e);
 		}
+		if(method == null) {
+			throw new IllegalArgumentException("NoSuchMethodException in obtaining method " + clazz.getSimpleName() + "#" + methodName + "()",
+					new NoSuchMethodException(clazz.getName() + "." + methodName + "()"));
+		}
+		return method;
 	}
 	
 	/**
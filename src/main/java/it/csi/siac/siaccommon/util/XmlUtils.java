@@ -6,28 +6,35 @@ package it.csi.siac.siaccommon.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 
-import javax.xml.XMLConstants;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
+import javax.xml.transform.Source;
 
 import org.xml.sax.SAXException;
 
+import it.csi.siac.siaccommon.util.xml.SchemaRegistry;
+
 public class XmlUtils {
 
 	private XmlUtils() {
 	}
 	
 	public static void validateXmlWithXsd(URL xsdLoc, byte[] xml) throws SAXException, IOException {
-		SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+		validateXmlWithXsd(xsdLoc, new ByteArrayInputStream(xml));
+	}
+
+	/**
+	 * Valida l'xml letto in streaming, con lo schema compilato in cache
+	 */
+	public static void validateXmlWithXsd(URL xsdLoc, InputStream xml) throws SAXException, IOException {
+		SchemaRegistry.validate(xsdLoc, xml);
+	}
 
-		Schema schema = sf.newSchema(xsdLoc);
-		
-		Validator v = schema.newValidator();
-		
-		v.validate(new StreamSource(new ByteArrayInputStream(xml)));
+	/**
+	 * Valida l'xml letto in streaming, con lo schema compilato in cache
+	 */
+	public static void validateXmlWithXsd(URL xsdLoc, Source xml) throws SAXException, IOException {
+		SchemaRegistry.validate(xsdLoc, xml);
 	}
 }
@@ -0,0 +1,351 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import it.csi.siac.siaccommon.util.cache.stats.CacheStats;
+import it.csi.siac.siaccommon.util.cache.stats.DisabledStatsCounter;
+import it.csi.siac.siaccommon.util.cache.stats.StatsCounter;
+
+/**
+ * Base class for the thread-safe caches.
+ * <p>
+ * Cache misses are loaded with a per-key single-flight policy: concurrent misses on the same key wait for a single
+ * execution of the initializer, while misses on different keys are loaded in parallel.
+ * <br>
+ * A <code>null</code> initialization result is returned to the callers waiting for it but is not cached, so that the
+ * next request will try the initialization again.
+ * <br>
+ * Bulk loads claim the missing keys with the same policy: the keys already claimed by a concurrent load are waited for,
+ * and only the remaining ones are passed to the bulk initializer.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public abstract class AbstractCache<K, V> implements InstrumentedCache<K, V> {
+
+	/** The initializations currently in progress, by key */
+	private final ConcurrentMap<K, FutureTask<V>> loading = new ConcurrentHashMap<K, FutureTask<V>>();
+	/** The recorder of the statistics */
+	private volatile StatsCounter statsCounter = DisabledStatsCounter.INSTANCE;
+
+	@Override
+	public V get(K key) {
+		V value = lookup(key);
+		if(value != null) {
+			statsCounter.recordHits(1);
+		} else {
+			statsCounter.recordMisses(1);
+		}
+		return value;
+	}
+
+	@Override
+	public V get(K key, CacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		V value = get(key);
+		if(value != null) {
+			return value;
+		}
+		FutureTask<V> task = new FutureTask<V>(new InitializerCallable(key, initializer));
+		FutureTask<V> inFlight = loading.putIfAbsent(key, task);
+		if(inFlight == null) {
+			// This thread owns the initialization for the key
+			inFlight = task;
+			try {
+				task.run();
+			} finally {
+				loading.remove(key, task);
+			}
+		}
+		return waitFor(key, inFlight);
+	}
+
+	@Override
+	public Map<K, V> getAll(Collection<? extends K> keys, BulkCacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		Map<K, V> present = new LinkedHashMap<K, V>();
+		Map<K, FutureTask<V>> claimed = new LinkedHashMap<K, FutureTask<V>>();
+		Map<K, FutureTask<V>> inFlight = new LinkedHashMap<K, FutureTask<V>>();
+		BulkLoad bulkLoad = new BulkLoad(initializer);
+		for(K key : keys) {
+			if(present.containsKey(key) || claimed.containsKey(key) || inFlight.containsKey(key)) {
+				continue;
+			}
+			V value = lookup(key);
+			if(value != null) {
+				present.put(key, value);
+				continue;
+			}
+			FutureTask<V> task = new FutureTask<V>(new BulkLoadedValueCallable(key, bulkLoad));
+			FutureTask<V> existing = loading.putIfAbsent(key, task);
+			if(existing == null) {
+				claimed.put(key, task);
+			} else {
+				inFlight.put(key, existing);
+			}
+		}
+		if(!claimed.isEmpty()) {
+			// This thread owns the initialization for the claimed keys
+			try {
+				bulkLoad.load(claimed.keySet());
+				for(FutureTask<V> task : claimed.values()) {
+					task.run();
+				}
+			} finally {
+				for(Map.Entry<K, FutureTask<V>> entry : claimed.entrySet()) {
+					// Releases the waiters, should the load have been aborted
+					entry.getValue().cancel(false);
+					loading.remove(entry.getKey(), entry.getValue());
+				}
+			}
+			inFlight.putAll(claimed);
+		}
+		statsCounter.recordHits(present.size());
+		statsCounter.recordMisses(inFlight.size());
+		Map<K, V> result = new LinkedHashMap<K, V>();
+		for(K key : keys) {
+			V value = present.get(key);
+			if(value == null && inFlight.containsKey(key)) {
+				value = waitFor(key, inFlight.get(key));
+			}
+			if(value != null) {
+				result.put(key, value);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void setStatsCounter(StatsCounter statsCounter) {
+		if(statsCounter == null) {
+			throw new NullPointerException("Null stats counter");
+		}
+		this.statsCounter = statsCounter;
+	}
+
+	@Override
+	public CacheStats getStats() {
+		return statsCounter.snapshot(size());
+	}
+
+	/**
+	 * @return the recorder of the statistics
+	 */
+	protected StatsCounter getStatsCounter() {
+		return statsCounter;
+	}
+
+	/**
+	 * Obtains the value corresponding to the given key, if present, without recording the statistics
+	 * @param key the key by which to obtain the value
+	 * @return the value corresponding to the key
+	 */
+	protected abstract V lookup(K key);
+
+	/**
+	 * Sets the value in the cache, if no value is present for the given key
+	 * @param key the key to set
+	 * @param value the value to set for the key
+	 * @return the value already present for the key, if any; <code>null</code> if the given value was set
+	 */
+	protected abstract V putIfAbsent(K key, V value);
+
+	/**
+	 * Waits for the initialization of the given key to complete
+	 * @param key the key
+	 * @param task the initialization task
+	 * @return the initialized value
+	 * @throws CacheElementInitializationException in case the initialization was unsuccessful
+	 */
+	private V waitFor(K key, FutureTask<V> task) {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					// Keep waiting: the initialization is shared with the other callers
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new CacheElementInitializationException("Error in the initialization of the element for key " + key, cause);
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Records the load statistics
+	 * @param success whether the load was successful
+	 * @param loadTime the load time
+	 */
+	private void recordLoad(boolean success, long loadTime) {
+		if(success) {
+			statsCounter.recordLoadSuccess(loadTime);
+		} else {
+			statsCounter.recordLoadFailure(loadTime);
+		}
+	}
+
+	/**
+	 * Stores the value loaded, if not already present
+	 * @param key the key
+	 * @param value the loaded value
+	 * @return the value in the cache
+	 */
+	private V putLoadedValue(K key, V value) {
+		if(value == null) {
+			return null;
+		}
+		V previous = putIfAbsent(key, value);
+		return previous != null ? previous : value;
+	}
+
+	/**
+	 * Initialization of a single key
+	 */
+	private class InitializerCallable implements Callable<V> {
+
+		/** The key to initialize */
+		private final K key;
+		/** The initializer */
+		private final CacheElementInitializer<K, V> initializer;
+
+		/**
+		 * Constructor
+		 * @param key the key
+		 * @param initializer the initializer
+		 */
+		InitializerCallable(K key, CacheElementInitializer<K, V> initializer) {
+			this.key = key;
+			this.initializer = initializer;
+		}
+
+		@Override
+		public V call() {
+			// The value may have been loaded between the first check and the registration of the task
+			V value = lookup(key);
+			if(value != null) {
+				return value;
+			}
+			long start = System.nanoTime();
+			try {
+				value = initializer.initialize(key);
+			} catch (RuntimeException e) {
+				statsCounter.recordLoadFailure(System.nanoTime() - start);
+				throw e;
+			}
+			recordLoad(value != null, System.nanoTime() - start);
+			return putLoadedValue(key, value);
+		}
+	}
+
+	/**
+	 * Single invocation of a bulk initializer, shared by the keys it loads
+	 */
+	private class BulkLoad {
+
+		/** The initializer */
+		private final BulkCacheElementInitializer<K, V> initializer;
+		/** The loaded values */
+		private Map<K, V> values;
+		/** The failure of the initializer, if any */
+		private RuntimeException failure;
+
+		/**
+		 * Constructor
+		 * @param initializer the initializer
+		 */
+		BulkLoad(BulkCacheElementInitializer<K, V> initializer) {
+			this.initializer = initializer;
+		}
+
+		/**
+		 * Loads the values for the keys not yet present
+		 * @param keys the keys to load
+		 */
+		void load(Collection<K> keys) {
+			Collection<K> missingKeys = new ArrayList<K>();
+			for(K key : keys) {
+				if(lookup(key) == null) {
+					missingKeys.add(key);
+				}
+			}
+			if(missingKeys.isEmpty()) {
+				values = new HashMap<K, V>();
+				return;
+			}
+			long start = System.nanoTime();
+			try {
+				values = initializer.initialize(missingKeys);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			recordLoad(failure == null && values != null, System.nanoTime() - start);
+			if(values == null) {
+				values = new HashMap<K, V>();
+			}
+		}
+	}
+
+	/**
+	 * Obtains the value of a single key from a bulk initialization
+	 */
+	private class BulkLoadedValueCallable implements Callable<V> {
+
+		/** The key */
+		private final K key;
+		/** The bulk load */
+		private final BulkLoad bulkLoad;
+
+		/**
+		 * Constructor
+		 * @param key the key
+		 * @param bulkLoad the bulk load
+		 */
+		BulkLoadedValueCallable(K key, BulkLoad bulkLoad) {
+			this.key = key;
+			this.bulkLoad = bulkLoad;
+		}
+
+		@Override
+		public V call() {
+			V value = lookup(key);
+			if(value != null) {
+				return value;
+			}
+			if(bulkLoad.failure != null) {
+				throw bulkLoad.failure;
+			}
+			return putLoadedValue(key, bulkLoad.values.get(key));
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import it.csi.siac.siaccommon.util.cache.stats.CacheStats;
+import it.csi.siac.siaccommon.util.cache.stats.DisabledStatsCounter;
+import it.csi.siac.siaccommon.util.cache.stats.StatsCounter;
+
+/**
+ * Asynchronous cache, whose values are loaded on an executor and returned as futures.
+ * <p>
+ * The future of a load is stored in the cache as soon as the load starts, so that concurrent requests for the same key share it.
+ * A failed load, or a load returning <code>null</code>, is removed from the cache before its future completes, so that the
+ * next request will try the initialization again.
+ * <br>
+ * The futures stored in the cache are never returned: each caller obtains a dependent future, so that completing or cancelling
+ * it affects that caller only.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class AsyncCache<K, V> {
+
+	/** The underlying map */
+	private final ConcurrentMap<K, CompletableFuture<V>> map = new ConcurrentHashMap<K, CompletableFuture<V>>();
+	/** The executor for the loads */
+	private final Executor executor;
+	/** The recorder of the statistics */
+	private volatile StatsCounter statsCounter = DisabledStatsCounter.INSTANCE;
+
+	/**
+	 * Constructor
+	 * @param executor the executor on which to run the initializers
+	 */
+	public AsyncCache(Executor executor) {
+		if(executor == null) {
+			throw new NullPointerException("Null executor");
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Obtains the future of the value corresponding to the given key, if present or loading; <code>null</code> otherwise
+	 * @param key the key by which to obtain the value
+	 * @return the future of the value
+	 */
+	public CompletableFuture<V> getIfPresent(K key) {
+		CompletableFuture<V> future = map.get(key);
+		if(future != null) {
+			statsCounter.recordHits(1);
+		} else {
+			statsCounter.recordMisses(1);
+		}
+		return dependent(future);
+	}
+
+	/**
+	 * Obtains the future of the value corresponding to the given key, if present or loading; starts the initialization on the executor otherwise
+	 * @param key the key by which to obtain or initialize the value
+	 * @param initializer the value initializer
+	 * @return the future of the value. The future completes exceptionally in case the initialization was unsuccessful
+	 */
+	public CompletableFuture<V> getAsync(K key, CacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		CompletableFuture<V> future = map.get(key);
+		if(future != null) {
+			statsCounter.recordHits(1);
+			return dependent(future);
+		}
+		CompletableFuture<V> created = new CompletableFuture<V>();
+		future = map.putIfAbsent(key, created);
+		if(future != null) {
+			statsCounter.recordHits(1);
+			return dependent(future);
+		}
+		statsCounter.recordMisses(1);
+		try {
+			executor.execute(new LoadTask(key, initializer, created));
+		} catch (RejectedExecutionException e) {
+			map.remove(key, created);
+			created.completeExceptionally(e);
+		}
+		return dependent(created);
+	}
+
+	/**
+	 * Sets the value in the cache, corresponding to the given key
+	 * @param key the key to set
+	 * @param value the value to set for the key
+	 */
+	public void put(K key, V value) {
+		if(value == null) {
+			throw new NullPointerException("Null value");
+		}
+		map.put(key, CompletableFuture.completedFuture(value));
+	}
+
+	/**
+	 * Removes a given value from the cache. A load in progress for the key is not stored
+	 * @param key the key to remove
+	 * @return the future of the removed value, if present
+	 */
+	public CompletableFuture<V> remove(K key) {
+		return dependent(map.remove(key));
+	}
+
+	/**
+	 * Obtains the cache size, comprising the loads in progress
+	 * @return the size
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Sets the recorder of the statistics
+	 * @param statsCounter the recorder
+	 */
+	public void setStatsCounter(StatsCounter statsCounter) {
+		if(statsCounter == null) {
+			throw new NullPointerException("Null stats counter");
+		}
+		this.statsCounter = statsCounter;
+	}
+
+	/**
+	 * Obtains a snapshot of the statistics
+	 * @return the statistics
+	 */
+	public CacheStats getStats() {
+		return statsCounter.snapshot(size());
+	}
+
+	/**
+	 * Obtains a future completed by the given one, which can be handed to a caller without exposing the stored future
+	 * @param future the stored future
+	 * @return the dependent future; <code>null</code> if the given one is <code>null</code>
+	 */
+	private static <V> CompletableFuture<V> dependent(CompletableFuture<V> future) {
+		return future != null ? future.thenApply(Function.<V>identity()) : null;
+	}
+
+	/**
+	 * Initialization of a single key on the executor
+	 */
+	private class LoadTask implements Runnable {
+
+		/** The key to initialize */
+		private final K key;
+		/** The initializer */
+		private final CacheElementInitializer<K, V> initializer;
+		/** The future to complete */
+		private final CompletableFuture<V> future;
+
+		/**
+		 * Constructor
+		 * @param key the key
+		 * @param initializer the initializer
+		 * @param future the future to complete
+		 */
+		LoadTask(K key, CacheElementInitializer<K, V> initializer, CompletableFuture<V> future) {
+			this.key = key;
+			this.initializer = initializer;
+			this.future = future;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			V value;
+			try {
+				value = initializer.initialize(key);
+			} catch (Throwable t) {
+				statsCounter.recordLoadFailure(System.nanoTime() - start);
+				map.remove(key, future);
+				future.completeExceptionally(t);
+				return;
+			}
+			if(value == null) {
+				statsCounter.recordLoadFailure(System.nanoTime() - start);
+				map.remove(key, future);
+			} else {
+				statsCounter.recordLoadSuccess(System.nanoTime() - start);
+			}
+			future.complete(value);
+		}
+	}
+
+}
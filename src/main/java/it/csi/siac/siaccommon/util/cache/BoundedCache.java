@@ -0,0 +1,585 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache bounded by the number of its entries, or by their weight, with a W-TinyLFU eviction policy.
+ * <p>
+ * The entries are admitted into a small LRU window (1% of the capacity). The entries leaving the window compete with the
+ * least recently used entry of the main space, and the one with the lower estimated access frequency is evicted.
+ * The main space is a segmented LRU: entries accessed while on probation are promoted to the protected segment (80%
+ * of the main space), and the entries exceeding the protected segment are demoted back to probation.
+ * <p>
+ * Reads are lock-free: the accesses are recorded in a lossy buffer which is replayed on the policy in batches, when
+ * the buffer is full enough or on the next write. Writes are guarded by a lock, and all the policy operations are
+ * amortized O(1).
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BoundedCache<K, V> extends AbstractCache<K, V> {
+
+	/** The maximum initial size of the frequency sketch, grown afterwards with the number of entries */
+	private static final long INITIAL_SKETCH_SIZE = 1024L;
+	/** The maximum number of pending reads: further reads are not recorded */
+	private static final int READ_BUFFER_MAXIMUM = 256;
+	/** The number of pending reads which triggers a drain */
+	private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+	/** Percentage of the capacity reserved for the admission window */
+	private static final int WINDOW_PERCENTAGE = 1;
+	/** Percentage of the main space reserved for the protected segment */
+	private static final int PROTECTED_PERCENTAGE = 80;
+
+	/** The underlying map */
+	private final ConcurrentMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+	/** The weigher for the entries */
+	private final Weigher<? super K, ? super V> weigher;
+	/** The maximum weight of the cache */
+	private final long maximum;
+	/** The maximum weight of the admission window */
+	private final long windowMaximum;
+	/** The maximum weight of the protected segment */
+	private final long protectedMaximum;
+	/** The lock guarding the policy */
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	/** The reads not yet replayed on the policy */
+	private final Queue<Node<K, V>> readBuffer = new ConcurrentLinkedQueue<Node<K, V>>();
+	/** The number of the reads not yet replayed on the policy */
+	private final AtomicInteger readBufferSize = new AtomicInteger();
+	/** The access frequency estimate. Guarded by the eviction lock */
+	private final FrequencySketch sketch;
+	/** The admission window. Guarded by the eviction lock */
+	private final AccessOrderDeque<K, V> window = new AccessOrderDeque<K, V>();
+	/** The probation segment. Guarded by the eviction lock */
+	private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<K, V>();
+	/** The protected segment. Guarded by the eviction lock */
+	private final AccessOrderDeque<K, V> protectedSegment = new AccessOrderDeque<K, V>();
+	/** The weight of the cache. Guarded by the eviction lock */
+	private long weightedSize;
+	/** The weight of the admission window. Guarded by the eviction lock */
+	private long windowWeightedSize;
+	/** The weight of the protected segment. Guarded by the eviction lock */
+	private long protectedWeightedSize;
+	/** The entry set view */
+	private Set<Entry<K, V>> entrySet;
+
+	/**
+	 * Constructor for a cache bounded by the number of its entries
+	 * @param maximumSize the maximum number of entries
+	 */
+	public BoundedCache(long maximumSize) {
+		// The sketch grows as the cache fills: a generous maximum does not allocate it in full upfront
+		this(maximumSize, SingletonWeigher.INSTANCE, Math.min(maximumSize, INITIAL_SKETCH_SIZE));
+	}
+
+	/**
+	 * Constructor for a cache bounded by the weight of its entries
+	 * @param maximumWeight the maximum weight of the entries
+	 * @param weigher the weigher for the entries
+	 */
+	public BoundedCache(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+		this(maximumWeight, weigher, 0L);
+	}
+
+	/**
+	 * Base constructor
+	 * @param maximum the maximum weight
+	 * @param weigher the weigher for the entries
+	 * @param expectedSize the expected number of entries
+	 */
+	private BoundedCache(long maximum, Weigher<? super K, ? super V> weigher, long expectedSize) {
+		if(maximum < 0L) {
+			throw new IllegalArgumentException("Negative maximum: " + maximum);
+		}
+		if(weigher == null) {
+			throw new NullPointerException("Null weigher");
+		}
+		this.maximum = maximum;
+		this.weigher = weigher;
+		this.windowMaximum = Math.max(1L, maximum * WINDOW_PERCENTAGE / 100L);
+		this.protectedMaximum = Math.max(0L, maximum - windowMaximum) * PROTECTED_PERCENTAGE / 100L;
+		this.sketch = new FrequencySketch(expectedSize);
+	}
+
+	@Override
+	protected V lookup(K key) {
+		Node<K, V> node = map.get(key);
+		if(node == null) {
+			return null;
+		}
+		V value = node.value;
+		afterRead(node);
+		return value;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return put(key, value, false);
+	}
+
+	@Override
+	protected V putIfAbsent(K key, V value) {
+		return put(key, value, true);
+	}
+
+	/**
+	 * Sets the value in the cache
+	 * @param key the key to set
+	 * @param value the value to set for the key
+	 * @param onlyIfAbsent whether to keep the value already present for the key
+	 * @return the previous value corresponding to the key, if present
+	 */
+	private V put(K key, V value, boolean onlyIfAbsent) {
+		if(key == null || value == null) {
+			throw new NullPointerException("Null key or value");
+		}
+		int weight = weigh(key, value);
+		evictionLock.lock();
+		try {
+			drainReadBuffer();
+			Node<K, V> node = map.get(key);
+			if(node == null) {
+				node = new Node<K, V>(key, value, weight);
+				map.put(key, node);
+				addToWindow(node);
+				evict();
+				return null;
+			}
+			V previous = node.value;
+			if(!onlyIfAbsent) {
+				node.value = value;
+				updateWeight(node, weight);
+			}
+			onAccess(node);
+			evict();
+			return previous;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	@Override
+	public V remove(K key) {
+		evictionLock.lock();
+		try {
+			Node<K, V> node = map.remove(key);
+			if(node == null) {
+				return null;
+			}
+			unlink(node);
+			return node.value;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		if(entrySet == null) {
+			entrySet = new EntrySetView();
+		}
+		return entrySet;
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return map.containsKey(key);
+	}
+
+	/**
+	 * @return the maximum weight of the cache (the maximum number of entries, if not bounded by weight)
+	 */
+	public long getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * @return the current weight of the cache (the current number of entries, if not bounded by weight)
+	 */
+	public long getWeightedSize() {
+		evictionLock.lock();
+		try {
+			return weightedSize;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Computes the weight of the entry
+	 * @param key the key
+	 * @param value the value
+	 * @return the weight
+	 */
+	private int weigh(K key, V value) {
+		int weight = weigher.weigh(key, value);
+		if(weight < 0) {
+			throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+		}
+		return weight;
+	}
+
+	/**
+	 * Records the read of the node, draining the read buffer if needed
+	 * @param node the node read
+	 */
+	private void afterRead(Node<K, V> node) {
+		int pending = readBufferSize.incrementAndGet();
+		if(pending > READ_BUFFER_MAXIMUM) {
+			// The buffer is full: the read is not recorded
+			readBufferSize.decrementAndGet();
+		} else {
+			readBuffer.offer(node);
+		}
+		if(pending >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+			try {
+				drainReadBuffer();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Replays the pending reads on the policy. Must be called under the eviction lock
+	 */
+	private void drainReadBuffer() {
+		for(int i = 0; i < READ_BUFFER_MAXIMUM; i++) {
+			Node<K, V> node = readBuffer.poll();
+			if(node == null) {
+				return;
+			}
+			readBufferSize.decrementAndGet();
+			sketch.increment(node.key);
+			onAccess(node);
+		}
+	}
+
+	/**
+	 * Adds a new node to the admission window. Must be called under the eviction lock
+	 * @param node the node
+	 */
+	private void addToWindow(Node<K, V> node) {
+		node.queue = Node.WINDOW;
+		window.addLast(node);
+		windowWeightedSize += node.weight;
+		weightedSize += node.weight;
+		sketch.ensureCapacity(map.size());
+		sketch.increment(node.key);
+	}
+
+	/**
+	 * Updates the weight of the node. Must be called under the eviction lock
+	 * @param node the node
+	 * @param weight the new weight
+	 */
+	private void updateWeight(Node<K, V> node, int weight) {
+		int delta = weight - node.weight;
+		node.weight = weight;
+		weightedSize += delta;
+		if(node.queue == Node.WINDOW) {
+			windowWeightedSize += delta;
+		} else if(node.queue == Node.PROTECTED) {
+			protectedWeightedSize += delta;
+		}
+	}
+
+	/**
+	 * Updates the position of the node after an access. Must be called under the eviction lock
+	 * @param node the node
+	 */
+	private void onAccess(Node<K, V> node) {
+		switch(node.queue) {
+			case Node.WINDOW:
+				window.moveToBack(node);
+				break;
+			case Node.PROBATION:
+				// Promotion to the protected segment
+				probation.remove(node);
+				node.queue = Node.PROTECTED;
+				protectedSegment.addLast(node);
+				protectedWeightedSize += node.weight;
+				demoteFromProtected();
+				break;
+			case Node.PROTECTED:
+				protectedSegment.moveToBack(node);
+				break;
+			default:
+				// Already removed
+				break;
+		}
+	}
+
+	/**
+	 * Moves the least recently used entries exceeding the protected segment to probation. Must be called under the eviction lock
+	 */
+	private void demoteFromProtected() {
+		while(protectedWeightedSize > protectedMaximum) {
+			Node<K, V> demoted = protectedSegment.peekFirst();
+			protectedSegment.remove(demoted);
+			protectedWeightedSize -= demoted.weight;
+			demoted.queue = Node.PROBATION;
+			probation.addLast(demoted);
+		}
+	}
+
+	/**
+	 * Evicts the entries exceeding the maximum. Must be called under the eviction lock
+	 */
+	private void evict() {
+		while(windowWeightedSize > windowMaximum) {
+			// The candidate leaves the window and competes with the victims of the main space
+			Node<K, V> candidate = window.peekFirst();
+			window.remove(candidate);
+			windowWeightedSize -= candidate.weight;
+			candidate.queue = Node.PROBATION;
+			probation.addLast(candidate);
+			while(weightedSize > maximum) {
+				Node<K, V> victim = probation.peekFirst() != candidate ? probation.peekFirst() : protectedSegment.peekFirst();
+				if(victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+					evictNode(candidate);
+					break;
+				}
+				evictNode(victim);
+			}
+		}
+		while(weightedSize > maximum) {
+			// Entries exceeding the maximum on their own, or weights updated in the main space
+			Node<K, V> victim = probation.peekFirst();
+			if(victim == null) {
+				victim = protectedSegment.peekFirst();
+			}
+			if(victim == null) {
+				victim = window.peekFirst();
+			}
+			if(victim == null) {
+				return;
+			}
+			evictNode(victim);
+		}
+	}
+
+	/**
+	 * Evicts the node. Must be called under the eviction lock
+	 * @param node the node
+	 */
+	private void evictNode(Node<K, V> node) {
+		map.remove(node.key, node);
+		unlink(node);
+		getStatsCounter().recordEviction();
+	}
+
+	/**
+	 * Removes the node from the policy. Must be called under the eviction lock
+	 * @param node the node
+	 */
+	private void unlink(Node<K, V> node) {
+		switch(node.queue) {
+			case Node.WINDOW:
+				window.remove(node);
+				windowWeightedSize -= node.weight;
+				break;
+			case Node.PROBATION:
+				probation.remove(node);
+				break;
+			case Node.PROTECTED:
+				protectedSegment.remove(node);
+				protectedWeightedSize -= node.weight;
+				break;
+			default:
+				// Already removed
+				return;
+		}
+		weightedSize -= node.weight;
+		node.queue = Node.DEAD;
+	}
+
+	/**
+	 * Cache entry, linked in the access order of its segment
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	private static final class Node<K, V> {
+		/** Node in the admission window */
+		static final int WINDOW = 0;
+		/** Node in the probation segment */
+		static final int PROBATION = 1;
+		/** Node in the protected segment */
+		static final int PROTECTED = 2;
+		/** Node removed from the cache */
+		static final int DEAD = 3;
+
+		/** The key */
+		final K key;
+		/** The value */
+		volatile V value;
+		/** The weight. Guarded by the eviction lock */
+		int weight;
+		/** The segment. Guarded by the eviction lock */
+		int queue;
+		/** The previous node in the segment. Guarded by the eviction lock */
+		Node<K, V> prev;
+		/** The next node in the segment. Guarded by the eviction lock */
+		Node<K, V> next;
+
+		/**
+		 * Constructor
+		 * @param key the key
+		 * @param value the value
+		 * @param weight the weight
+		 */
+		Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Doubly-linked list of the nodes, in access order
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	private static final class AccessOrderDeque<K, V> {
+		/** The least recently used node */
+		private Node<K, V> head;
+		/** The most recently used node */
+		private Node<K, V> tail;
+
+		/**
+		 * @return the least recently used node
+		 */
+		Node<K, V> peekFirst() {
+			return head;
+		}
+
+		/**
+		 * Links the node as the most recently used
+		 * @param node the node
+		 */
+		void addLast(Node<K, V> node) {
+			node.prev = tail;
+			node.next = null;
+			if(tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+		}
+
+		/**
+		 * Unlinks the node
+		 * @param node the node
+		 */
+		void remove(Node<K, V> node) {
+			if(node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if(node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+		}
+
+		/**
+		 * Moves the node to the most recently used position
+		 * @param node the node
+		 */
+		void moveToBack(Node<K, V> node) {
+			if(node != tail) {
+				remove(node);
+				addLast(node);
+			}
+		}
+	}
+
+	/**
+	 * View of the cache entries
+	 */
+	private final class EntrySetView extends AbstractSet<Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if(!(o instanceof Entry)) {
+				return false;
+			}
+			Entry<?, ?> entry = (Entry<?, ?>) o;
+			Node<K, V> node = entry.getKey() != null ? map.get(entry.getKey()) : null;
+			return node != null && node.value.equals(entry.getValue());
+		}
+
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			final Iterator<Node<K, V>> iterator = map.values().iterator();
+			return new Iterator<Entry<K, V>>() {
+				private Node<K, V> current;
+
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				public Entry<K, V> next() {
+					current = iterator.next();
+					return new SimpleImmutableEntry<K, V>(current.key, current.value);
+				}
+
+				@Override
+				public void remove() {
+					if(current == null) {
+						throw new IllegalStateException();
+					}
+					BoundedCache.this.remove(current.key);
+					current = null;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Weigher giving a unitary weight to every entry
+	 */
+	private static final class SingletonWeigher implements Weigher<Object, Object> {
+		/** The instance */
+		static final SingletonWeigher INSTANCE = new SingletonWeigher();
+
+		@Override
+		public int weigh(Object key, Object value) {
+			return 1;
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Initializer for many cache elements at once, e.g. via a single query on all the keys
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public interface BulkCacheElementInitializer<K, V> {
+
+	/**
+	 * Initializes the cached values given the keys to which they are to be registered
+	 * @param keys the keys of the elements, not present in the cache
+	 * @return the initial values by key. The keys with no value may be omitted
+	 * @throws CacheElementInitializationException in case the initialization was unsuccessful
+	 */
+	Map<K, V> initialize(Collection<K> keys);
+
+}
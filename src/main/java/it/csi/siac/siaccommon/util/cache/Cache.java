@@ -4,6 +4,11 @@
 */
 package it.csi.siac.siaccommon.util.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -30,6 +35,46 @@ public interface Cache<K, V> {
 	 * @throws CacheElementInitializationException in case the initialization was unsuccessful
 	 */
 	V get(K key, CacheElementInitializer<K, V> initializer);
+	/**
+	 * Obtains the values corresponding to the given keys. The keys not present are initialized with a single invocation of the initializer
+	 * <br>
+	 * The default implementation relies on {@link #get(Object)} and {@link #put(Object, Object)}, and does not coordinate
+	 * concurrent loads of the same keys.
+	 * @param keys the keys by which to obtain or initialize the values
+	 * @param initializer the values initializer
+	 * @return the values by key, in the iteration order of the keys. The keys with no value are omitted
+	 * @throws CacheElementInitializationException in case the initialization was unsuccessful
+	 */
+	default Map<K, V> getAll(Collection<? extends K> keys, BulkCacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		Map<K, V> present = new HashMap<K, V>();
+		Set<K> missingKeys = new LinkedHashSet<K>();
+		for(K key : keys) {
+			V value = get(key);
+			if(value != null) {
+				present.put(key, value);
+			} else {
+				missingKeys.add(key);
+			}
+		}
+		Map<K, V> loaded = missingKeys.isEmpty() ? null : initializer.initialize(missingKeys);
+		Map<K, V> result = new LinkedHashMap<K, V>();
+		for(K key : keys) {
+			V value = present.get(key);
+			if(value == null && loaded != null) {
+				value = loaded.get(key);
+				if(value != null) {
+					put(key, value);
+				}
+			}
+			if(value != null) {
+				result.put(key, value);
+			}
+		}
+		return result;
+	}
 	/**
 	 * Sets the value in the cache, corresponding to the given key
 	 * @param key the key to set
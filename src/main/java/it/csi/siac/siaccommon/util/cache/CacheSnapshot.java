@@ -0,0 +1,250 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import it.csi.siac.siaccommon.util.cache.serializer.CacheSerializer;
+import it.csi.siac.siaccommon.util.log.LogUtil;
+
+/**
+ * Snapshot of a cache on a local file, to warm the cache up at startup without running the initializers.
+ * <p>
+ * The file format is versioned and checksummed:
+ * <pre>
+ * magic (int) | format version (int) | schema version (int)
+ * { key length (int) | key bytes | value length (int) | value bytes }*
+ * -1 (int) | entry count (int) | CRC32 of all the preceding bytes (long)
+ * </pre>
+ * The snapshot is written to a temporary file and then moved over the previous one, so that a crash while writing never
+ * leaves a truncated snapshot. It is read via a memory mapping, and is verified as a whole before any entry is set in the cache:
+ * a missing, corrupt or mismatching snapshot leaves the cache untouched, so that its values will be loaded by the initializers.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class CacheSnapshot<K, V> {
+
+	/** Logger */
+	private static final LogUtil LOG = new LogUtil(CacheSnapshot.class);
+	/** The file magic number ("SIAC") */
+	private static final int MAGIC = 0x53494143;
+	/** The version of the file format */
+	private static final int FORMAT_VERSION = 1;
+	/** The length of the header */
+	private static final int HEADER_LENGTH = 12;
+	/** The length of the trailer */
+	private static final int TRAILER_LENGTH = 16;
+
+	/** The snapshot file */
+	private final File file;
+	/** The version of the schema of the cached data */
+	private final int schemaVersion;
+	/** The serializer of the keys */
+	private final CacheSerializer<K> keySerializer;
+	/** The serializer of the values */
+	private final CacheSerializer<V> valueSerializer;
+
+	/**
+	 * Constructor
+	 * @param file the snapshot file
+	 * @param schemaVersion the version of the schema of the cached data, to be changed whenever the serialized form of keys or values changes
+	 * @param keySerializer the serializer of the keys
+	 * @param valueSerializer the serializer of the values
+	 */
+	public CacheSnapshot(File file, int schemaVersion, CacheSerializer<K> keySerializer, CacheSerializer<V> valueSerializer) {
+		if(file == null || keySerializer == null || valueSerializer == null) {
+			throw new NullPointerException("Null file or serializer");
+		}
+		this.file = file;
+		this.schemaVersion = schemaVersion;
+		this.keySerializer = keySerializer;
+		this.valueSerializer = valueSerializer;
+	}
+
+	/**
+	 * Saves the entries of the cache in the snapshot file
+	 * @param cache the cache to save
+	 * @return the number of saved entries
+	 * @throws IOException in case of an error in writing the file
+	 */
+	public int save(Cache<K, V> cache) throws IOException {
+		final String methodName = "save";
+		long start = System.currentTimeMillis();
+		File temp = new File(file.getPath() + ".tmp");
+		CRC32 crc = new CRC32();
+		DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), crc));
+		int count = 0;
+		boolean written = false;
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(schemaVersion);
+			for(Entry<K, V> entry : cache.entrySet()) {
+				byte[] key = keySerializer.serialize(entry.getKey());
+				byte[] value = valueSerializer.serialize(entry.getValue());
+				out.writeInt(key.length);
+				out.write(key);
+				out.writeInt(value.length);
+				out.write(value);
+				count++;
+			}
+			out.writeInt(-1);
+			out.writeInt(count);
+			out.flush();
+			// The checksum is not part of the checked bytes
+			out.writeLong(crc.getValue());
+			out.close();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			written = true;
+		} finally {
+			IOUtils.closeQuietly(out);
+			if(!written) {
+				// The previous snapshot, if any, is left in place
+				temp.delete();
+			}
+		}
+		LOG.info(methodName, "Saved " + count + " entries in snapshot " + file + " in " + (System.currentTimeMillis() - start) + "ms");
+		return count;
+	}
+
+	/**
+	 * Loads the entries of the snapshot file in the cache. In case the snapshot is missing, corrupt or of a different
+	 * schema version, the cache is left untouched
+	 * @param cache the cache to warm up
+	 * @return the number of loaded entries
+	 */
+	public int load(Cache<K, V> cache) {
+		final String methodName = "load";
+		if(!file.isFile()) {
+			LOG.info(methodName, "No snapshot " + file + ": the cache will be loaded by the initializers");
+			return 0;
+		}
+		long start = System.currentTimeMillis();
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			if(channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_LENGTH + TRAILER_LENGTH) {
+				LOG.warn(methodName, "Invalid size " + channel.size() + " of snapshot " + file + ": the cache will be loaded by the initializers");
+				return 0;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+			String invalidity = validate(buffer);
+			if(invalidity != null) {
+				LOG.warn(methodName, "Invalid snapshot " + file + " (" + invalidity + "): the cache will be loaded by the initializers");
+				return 0;
+			}
+			// Deserialized as a whole before setting any entry, so that a failure of the serializers leaves the cache untouched
+			List<Entry<K, V>> entries = new ArrayList<Entry<K, V>>();
+			buffer.position(HEADER_LENGTH);
+			for(int keyLength = buffer.getInt(); keyLength != -1; keyLength = buffer.getInt()) {
+				K key = keySerializer.deserialize(slice(buffer, keyLength));
+				V value = valueSerializer.deserialize(slice(buffer, buffer.getInt()));
+				entries.add(new SimpleImmutableEntry<K, V>(key, value));
+			}
+			for(Entry<K, V> entry : entries) {
+				cache.put(entry.getKey(), entry.getValue());
+			}
+			LOG.info(methodName, "Loaded " + entries.size() + " entries from snapshot " + file + " in " + (System.currentTimeMillis() - start) + "ms");
+			return entries.size();
+		} catch (IOException e) {
+			LOG.warn(methodName, "Unreadable snapshot " + file + ": the cache will be loaded by the initializers", e);
+			return 0;
+		} catch (RuntimeException e) {
+			// E.g. the classes of the values changed without a change of the schema version
+			LOG.warn(methodName, "Undeserializable snapshot " + file + ": the cache will be loaded by the initializers", e);
+			return 0;
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+	}
+
+	/**
+	 * Validates the snapshot
+	 * @param buffer the snapshot content
+	 * @return the reason of the invalidity; <code>null</code> if the snapshot is valid
+	 */
+	private String validate(ByteBuffer buffer) {
+		int checkedLength = buffer.limit() - 8;
+		if(buffer.getInt(0) != MAGIC) {
+			return "not a snapshot file";
+		}
+		if(buffer.getInt(4) != FORMAT_VERSION) {
+			return "format version " + buffer.getInt(4) + " instead of " + FORMAT_VERSION;
+		}
+		if(buffer.getInt(8) != schemaVersion) {
+			return "schema version " + buffer.getInt(8) + " instead of " + schemaVersion;
+		}
+		CRC32 crc = new CRC32();
+		ByteBuffer checked = buffer.duplicate();
+		checked.position(0);
+		checked.limit(checkedLength);
+		crc.update(checked);
+		if(crc.getValue() != buffer.getLong(checkedLength)) {
+			return "checksum mismatch";
+		}
+		// Verifies the structure, so that no entry is loaded from an inconsistent file
+		ByteBuffer entries = buffer.duplicate();
+		entries.position(HEADER_LENGTH);
+		entries.limit(checkedLength);
+		int count = 0;
+		try {
+			for(int keyLength = entries.getInt(); keyLength != -1; keyLength = entries.getInt()) {
+				if(keyLength < 0) {
+					return "invalid key length " + keyLength;
+				}
+				entries.position(entries.position() + keyLength);
+				int valueLength = entries.getInt();
+				if(valueLength < 0) {
+					return "invalid value length " + valueLength;
+				}
+				entries.position(entries.position() + valueLength);
+				count++;
+			}
+			if(entries.getInt() != count || entries.hasRemaining()) {
+				return "entry count mismatch";
+			}
+		} catch (BufferUnderflowException e) {
+			return "truncated entries";
+		} catch (IllegalArgumentException e) {
+			return "truncated entries";
+		}
+		return null;
+	}
+
+	/**
+	 * Slices the given length from the buffer, advancing its position
+	 * @param buffer the buffer
+	 * @param length the length
+	 * @return the slice
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer slice = buffer.slice();
+		slice.limit(length);
+		buffer.position(buffer.position() + length);
+		return slice;
+	}
+
+}
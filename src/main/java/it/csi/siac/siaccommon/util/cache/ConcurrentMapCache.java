@@ -8,49 +8,34 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Cache backed by a concurrent map
+ * Cache backed by a concurrent map.
+ * <p>
+ * As the underlying map does not allow <code>null</code> values, a <code>null</code> initialization result is not cached.
  * @author Marchino Alessandro
  *
  * @param <K> the key type
  * @param <V> the value type
  */
-public class ConcurrentMapCache<K, V> implements Cache<K, V> {
+public class ConcurrentMapCache<K, V> extends AbstractCache<K, V> {
 
 	/** The underlying map */
 	private final ConcurrentMap<K, V> map = new ConcurrentHashMap<K, V>();
-	/** The lock to use (as of Java6) */
-	private final Lock lock = new ReentrantLock();
 
 	@Override
-	public V get(K key) {
+	protected V lookup(K key) {
 		return map.get(key);
 	}
 
 	@Override
-	public V get(K key, CacheElementInitializer<K, V> initializer) {
-		if(initializer == null) {
-			throw new NullPointerException("Null initializer");
-		}
-		if(!map.containsKey(key)) {
-			try {
-				lock.lock();
-				if(!map.containsKey(key)) {
-					map.put(key, initializer.initialize(key));
-				}
-			} finally {
-				lock.unlock();
-			}
-		}
-		return map.get(key);
+	public V put(K key, V value) {
+		return map.put(key, value);
 	}
 
 	@Override
-	public V put(K key, V value) {
-		return map.put(key, value);
+	protected V putIfAbsent(K key, V value) {
+		return map.putIfAbsent(key, value);
 	}
 
 	@Override
@@ -0,0 +1,507 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import it.csi.siac.siaccommon.util.log.LogUtil;
+
+/**
+ * Cache whose entries expire after a given time since their last write and/or their last access.
+ * <p>
+ * The expired entries are never returned. They are removed lazily when read, and by a cleanup with a bounded budget
+ * run on writes and every few reads, which visits the entries in write order: no full scan of the cache is ever performed.
+ * The writes and the removals are buffered, and applied to the write order by the cleanup: the entries replaced or removed
+ * are unlinked from it, so that its length is bounded by the size of the cache.
+ * <p>
+ * If a refresh time is set, an entry older than the refresh time is still served by {@link #get(Object, CacheElementInitializer)},
+ * while the initializer is run again on the given executor to replace it. The request thread is never blocked by a refresh;
+ * a failed refresh keeps the stale value, which is refreshed again on the next access.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ExpiringCache<K, V> extends AbstractCache<K, V> {
+
+	/** Logger */
+	private static final LogUtil LOG = new LogUtil(ExpiringCache.class);
+	/** The maximum number of entries visited by a single cleanup */
+	private static final int CLEANUP_BUDGET = 64;
+	/** The number of reads between two cleanups (power of two) */
+	private static final int READS_PER_CLEANUP = 64;
+
+	/** The underlying map */
+	private final ConcurrentMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+	/** The written nodes, to be linked in the write order by the cleanup */
+	private final Queue<Node<K, V>> writeBuffer = new ConcurrentLinkedQueue<Node<K, V>>();
+	/** The replaced and removed nodes, to be unlinked from the write order by the cleanup */
+	private final Queue<Node<K, V>> removalBuffer = new ConcurrentLinkedQueue<Node<K, V>>();
+	/** The first node in write order, to be checked for expiration first. Guarded by the cleanup lock */
+	private Node<K, V> head;
+	/** The last node in write order. Guarded by the cleanup lock */
+	private Node<K, V> tail;
+	/** The lock guarding the cleanup */
+	private final ReentrantLock cleanupLock = new ReentrantLock();
+	/** The number of reads, for the cleanup scheduling */
+	private final AtomicInteger readCount = new AtomicInteger();
+	/** The expiration time after the write, in nanoseconds (0 if not expiring) */
+	private final long expireAfterWriteNanos;
+	/** The expiration time after the access, in nanoseconds (0 if not expiring) */
+	private final long expireAfterAccessNanos;
+	/** The refresh time after the write, in nanoseconds (0 if not refreshing) */
+	private final long refreshAfterWriteNanos;
+	/** The executor for the refreshes */
+	private final Executor refreshExecutor;
+	/** The entry set view */
+	private Set<Entry<K, V>> entrySet;
+
+	/**
+	 * Constructor for a cache without refresh
+	 * @param expireAfterWrite the expiration time after the write (0 if not expiring)
+	 * @param expireAfterAccess the expiration time after the access (0 if not expiring)
+	 * @param unit the time unit
+	 */
+	public ExpiringCache(long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+		this(expireAfterWrite, expireAfterAccess, 0L, unit, null);
+	}
+
+	/**
+	 * Full constructor
+	 * @param expireAfterWrite the expiration time after the write (0 if not expiring)
+	 * @param expireAfterAccess the expiration time after the access (0 if not expiring)
+	 * @param refreshAfterWrite the refresh time after the write (0 if not refreshing)
+	 * @param unit the time unit
+	 * @param refreshExecutor the executor on which to run the refreshes (required if refreshing)
+	 */
+	public ExpiringCache(long expireAfterWrite, long expireAfterAccess, long refreshAfterWrite, TimeUnit unit, Executor refreshExecutor) {
+		if(expireAfterWrite < 0L || expireAfterAccess < 0L || refreshAfterWrite < 0L) {
+			throw new IllegalArgumentException("Negative duration");
+		}
+		if(refreshAfterWrite > 0L && refreshExecutor == null) {
+			throw new NullPointerException("Null refresh executor");
+		}
+		this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+		this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+		this.refreshAfterWriteNanos = unit.toNanos(refreshAfterWrite);
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	@Override
+	protected V lookup(K key) {
+		Node<K, V> node = getLiveNode(key, System.nanoTime());
+		afterRead();
+		return node != null ? node.value : null;
+	}
+
+	@Override
+	public V get(K key, CacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		long now = System.nanoTime();
+		Node<K, V> node = getLiveNode(key, now);
+		if(node == null) {
+			return super.get(key, initializer);
+		}
+		getStatsCounter().recordHits(1);
+		afterRead();
+		refreshIfNeeded(node, initializer, now);
+		return node.value;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		Node<K, V> node = new Node<K, V>(key, value, System.nanoTime());
+		Node<K, V> previous = map.put(key, node);
+		afterRemoval(previous);
+		afterWrite(node);
+		return previous != null && !isExpired(previous, node.writeTime) ? previous.value : null;
+	}
+
+	@Override
+	protected V putIfAbsent(K key, V value) {
+		Node<K, V> node = new Node<K, V>(key, value, System.nanoTime());
+		while(true) {
+			Node<K, V> existing = map.putIfAbsent(key, node);
+			if(existing == null) {
+				afterWrite(node);
+				return null;
+			}
+			if(!isExpired(existing, node.writeTime)) {
+				return existing.value;
+			}
+			if(map.replace(key, existing, node)) {
+				afterRemoval(existing);
+				afterWrite(node);
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public V remove(K key) {
+		Node<K, V> node = map.remove(key);
+		afterRemoval(node);
+		return node != null && !isExpired(node, System.nanoTime()) ? node.value : null;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		if(entrySet == null) {
+			entrySet = new EntrySetView();
+		}
+		return entrySet;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The size may comprise the expired entries not yet cleaned up
+	 */
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return getLiveNode(key, System.nanoTime()) != null;
+	}
+
+	/**
+	 * Obtains the node for the key, if present and not expired. Removes the expired node, and records the access
+	 * @param key the key
+	 * @param now the current time
+	 * @return the node
+	 */
+	private Node<K, V> getLiveNode(K key, long now) {
+		Node<K, V> node = map.get(key);
+		if(node == null) {
+			return null;
+		}
+		if(isExpired(node, now)) {
+			expire(node);
+			return null;
+		}
+		if(expireAfterAccessNanos > 0L) {
+			node.accessTime = now;
+		}
+		return node;
+	}
+
+	/**
+	 * Checks whether the node is expired
+	 * @param node the node
+	 * @param now the current time
+	 * @return whether the node is expired
+	 */
+	private boolean isExpired(Node<K, V> node, long now) {
+		return (expireAfterWriteNanos > 0L && now - node.writeTime >= expireAfterWriteNanos)
+			|| (expireAfterAccessNanos > 0L && now - node.accessTime >= expireAfterAccessNanos);
+	}
+
+	/**
+	 * Removes the expired node
+	 * @param node the node
+	 */
+	private void expire(Node<K, V> node) {
+		if(map.remove(node.key, node)) {
+			getStatsCounter().recordEviction();
+			afterRemoval(node);
+		}
+	}
+
+	/**
+	 * Starts the refresh of the node, if old enough and not already refreshing
+	 * @param node the node
+	 * @param initializer the initializer
+	 * @param now the current time
+	 */
+	private void refreshIfNeeded(Node<K, V> node, CacheElementInitializer<K, V> initializer, long now) {
+		if(refreshAfterWriteNanos == 0L || now - node.writeTime < refreshAfterWriteNanos || !node.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(new RefreshTask(node, initializer));
+		} catch (RejectedExecutionException e) {
+			LOG.warn("refreshIfNeeded", "Refresh rejected for key " + node.key + ": keeping the current value", e);
+			node.refreshing.set(false);
+		}
+	}
+
+	/**
+	 * Cleans up the expired entries every few reads
+	 */
+	private void afterRead() {
+		if((readCount.incrementAndGet() & (READS_PER_CLEANUP - 1)) == 0) {
+			expireEntries();
+		}
+	}
+
+	/**
+	 * Registers the written node for the expiration
+	 * @param node the node
+	 */
+	private void afterWrite(Node<K, V> node) {
+		if(expireAfterWriteNanos > 0L || expireAfterAccessNanos > 0L) {
+			writeBuffer.offer(node);
+			expireEntries();
+		}
+	}
+
+	/**
+	 * Registers the replaced or removed node, to be unlinked from the write order
+	 * @param node the node (may be <code>null</code>)
+	 */
+	private void afterRemoval(Node<K, V> node) {
+		if(node != null && (expireAfterWriteNanos > 0L || expireAfterAccessNanos > 0L)) {
+			removalBuffer.offer(node);
+		}
+	}
+
+	/**
+	 * Applies the buffered writes and removals to the write order, then removes the expired entries from its head,
+	 * within the cleanup budget
+	 */
+	private void expireEntries() {
+		if(!cleanupLock.tryLock()) {
+			// Another thread is cleaning up
+			return;
+		}
+		try {
+			Node<K, V> node;
+			while((node = writeBuffer.poll()) != null) {
+				if(map.get(node.key) == node) {
+					// Not already replaced or removed
+					linkLast(node);
+				}
+			}
+			while((node = removalBuffer.poll()) != null) {
+				unlink(node);
+			}
+			long now = System.nanoTime();
+			for(int i = 0; i < CLEANUP_BUDGET && head != null; i++) {
+				node = head;
+				if(map.get(node.key) != node) {
+					// Removed or replaced, its removal not yet buffered
+					unlink(node);
+				} else if(isExpired(node, now)) {
+					unlink(node);
+					if(map.remove(node.key, node)) {
+						getStatsCounter().recordEviction();
+					}
+				} else if(expireAfterAccessNanos == 0L) {
+					// The nodes are in write order: the following nodes are not expired either
+					return;
+				} else {
+					// Recently accessed: checked again on a later cleanup
+					unlink(node);
+					linkLast(node);
+				}
+			}
+		} finally {
+			cleanupLock.unlock();
+		}
+	}
+
+	/**
+	 * Links the node at the end of the write order. Must be called under the cleanup lock
+	 * @param node the node
+	 */
+	private void linkLast(Node<K, V> node) {
+		node.prev = tail;
+		node.next = null;
+		if(tail == null) {
+			head = node;
+		} else {
+			tail.next = node;
+		}
+		tail = node;
+	}
+
+	/**
+	 * Unlinks the node from the write order, if linked. Must be called under the cleanup lock
+	 * @param node the node
+	 */
+	private void unlink(Node<K, V> node) {
+		Node<K, V> prev = node.prev;
+		Node<K, V> next = node.next;
+		if(prev == null) {
+			if(head != node) {
+				// Not linked
+				return;
+			}
+			head = next;
+		} else {
+			prev.next = next;
+		}
+		if(next == null) {
+			tail = prev;
+		} else {
+			next.prev = prev;
+		}
+		node.prev = null;
+		node.next = null;
+	}
+
+	/**
+	 * Cache entry, with its timestamps
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	private static final class Node<K, V> {
+		/** The key */
+		final K key;
+		/** The value */
+		final V value;
+		/** The write time */
+		final long writeTime;
+		/** The last access time */
+		volatile long accessTime;
+		/** Whether a refresh is in progress */
+		final AtomicBoolean refreshing = new AtomicBoolean();
+		/** The previous node in write order. Guarded by the cleanup lock */
+		Node<K, V> prev;
+		/** The next node in write order. Guarded by the cleanup lock */
+		Node<K, V> next;
+
+		/**
+		 * Constructor
+		 * @param key the key
+		 * @param value the value
+		 * @param writeTime the write time
+		 */
+		Node(K key, V value, long writeTime) {
+			if(key == null || value == null) {
+				throw new NullPointerException("Null key or value");
+			}
+			this.key = key;
+			this.value = value;
+			this.writeTime = writeTime;
+			this.accessTime = writeTime;
+		}
+	}
+
+	/**
+	 * Background refresh of a node
+	 */
+	private class RefreshTask implements Runnable {
+
+		/** The node to refresh */
+		private final Node<K, V> node;
+		/** The initializer */
+		private final CacheElementInitializer<K, V> initializer;
+
+		/**
+		 * Constructor
+		 * @param node the node to refresh
+		 * @param initializer the initializer
+		 */
+		RefreshTask(Node<K, V> node, CacheElementInitializer<K, V> initializer) {
+			this.node = node;
+			this.initializer = initializer;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			try {
+				V value = initializer.initialize(node.key);
+				if(value == null) {
+					// No longer available: the next request will try the initialization again
+					getStatsCounter().recordLoadFailure(System.nanoTime() - start);
+					if(map.remove(node.key, node)) {
+						afterRemoval(node);
+					}
+					return;
+				}
+				getStatsCounter().recordLoadSuccess(System.nanoTime() - start);
+				Node<K, V> refreshed = new Node<K, V>(node.key, value, System.nanoTime());
+				if(map.replace(node.key, node, refreshed)) {
+					afterRemoval(node);
+					afterWrite(refreshed);
+				}
+			} catch (RuntimeException e) {
+				getStatsCounter().recordLoadFailure(System.nanoTime() - start);
+				LOG.warn("refresh", "Refresh failed for key " + node.key + ": keeping the current value", e);
+				node.refreshing.set(false);
+			}
+		}
+	}
+
+	/**
+	 * View of the cache entries not expired
+	 */
+	private final class EntrySetView extends AbstractSet<Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			final Iterator<Node<K, V>> iterator = map.values().iterator();
+			final long now = System.nanoTime();
+			return new Iterator<Entry<K, V>>() {
+				private Node<K, V> next = advance();
+				private Node<K, V> current;
+
+				private Node<K, V> advance() {
+					while(iterator.hasNext()) {
+						Node<K, V> node = iterator.next();
+						if(!isExpired(node, now)) {
+							return node;
+						}
+					}
+					return null;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public Entry<K, V> next() {
+					if(next == null) {
+						throw new NoSuchElementException();
+					}
+					current = next;
+					next = advance();
+					return new SimpleImmutableEntry<K, V>(current.key, current.value);
+				}
+
+				@Override
+				public void remove() {
+					if(current == null) {
+						throw new IllegalStateException();
+					}
+					if(map.remove(current.key, current)) {
+						afterRemoval(current);
+					}
+					current = null;
+				}
+			};
+		}
+	}
+
+}
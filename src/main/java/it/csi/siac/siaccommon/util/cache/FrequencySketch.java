@@ -0,0 +1,170 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2015 Ben Manes
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: Apache-2.0
+*/
+/*
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Modified by CSI Piemonte: derived from com.github.benmanes.caffeine.cache.FrequencySketch of Caffeine 2.x
+ * (https://github.com/ben-manes/caffeine), adapted to the BoundedCache of this library.
+ */
+package it.csi.siac.siaccommon.util.cache;
+
+/**
+ * Probabilistic estimate of the access frequency of the keys, used by the TinyLFU admission policy.
+ * <p>
+ * The sketch is a Count-Min sketch with four 4-bit counters per key, packed in a <code>long</code> array.
+ * All the counters are halved once the number of the increments reaches ten times the table size, so that the
+ * history ages and the sketch follows the changes of the workload.
+ * <br>
+ * The class is not thread-safe: the owner must guard the calls.
+ */
+final class FrequencySketch {
+
+	/** The seeds for the four hash functions */
+	private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+	/** Mask to halve the counters */
+	private static final long RESET_MASK = 0x7777777777777777L;
+	/** Mask to extract the lowest bit of the counters */
+	private static final long ONE_MASK = 0x1111111111111111L;
+	/** The maximum table length */
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	/** The counters */
+	private long[] table;
+	/** The mask for the table indices */
+	private int tableMask;
+	/** The number of increments before the aging */
+	private int sampleSize;
+	/** The number of increments since the last aging */
+	private int size;
+
+	/**
+	 * Constructor
+	 * @param expectedSize the expected number of distinct keys
+	 */
+	FrequencySketch(long expectedSize) {
+		ensureCapacity(expectedSize);
+	}
+
+	/**
+	 * Increases the table size, so that it may hold the given number of keys. Resets the history in case of resizing
+	 * @param expectedSize the expected number of distinct keys
+	 */
+	void ensureCapacity(long expectedSize) {
+		int capacity = ceilingPowerOfTwo((int) Math.min(Math.max(expectedSize, 16L), MAXIMUM_CAPACITY));
+		if(table != null && table.length >= capacity) {
+			return;
+		}
+		table = new long[capacity];
+		tableMask = capacity - 1;
+		sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+		size = 0;
+	}
+
+	/**
+	 * Estimates the frequency of the given key
+	 * @param key the key
+	 * @return the estimated frequency, between 0 and 15
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for(int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Increments the frequency of the given key, if not already at its maximum
+	 * @param key the key
+	 */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for(int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if(added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Increments the counter at the given position
+	 * @param i the table index
+	 * @param j the counter index within the table element
+	 * @return whether the counter was incremented
+	 */
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if((table[i] & mask) != mask) {
+			table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Halves all the counters
+	 */
+	private void reset() {
+		int count = 0;
+		for(int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+
+	/**
+	 * Computes the table index for the given hash function
+	 * @param hash the spread hash of the key
+	 * @param i the hash function index
+	 * @return the table index
+	 */
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEED[i]) * SEED[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	/**
+	 * Applies a supplemental hash function to the hash code
+	 * @param x the hash code
+	 * @return the spread hash
+	 */
+	private static int spread(int x) {
+		int h = ((x >>> 16) ^ x) * 0x45d9f3b;
+		h = ((h >>> 16) ^ h) * 0x45d9f3b;
+		return (h >>> 16) ^ h;
+	}
+
+	/**
+	 * Computes the smallest power of two not lower than the given value
+	 * @param x the value
+	 * @return the power of two
+	 */
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+}
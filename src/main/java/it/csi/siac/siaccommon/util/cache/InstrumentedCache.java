@@ -0,0 +1,30 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import it.csi.siac.siaccommon.util.cache.stats.CacheStats;
+import it.csi.siac.siaccommon.util.cache.stats.StatsCounter;
+
+/**
+ * Cache recording its statistics. The statistics are disabled by default
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public interface InstrumentedCache<K, V> extends Cache<K, V> {
+
+	/**
+	 * Sets the recorder of the statistics
+	 * @param statsCounter the recorder (e.g. a {@link it.csi.siac.siaccommon.util.cache.stats.ConcurrentStatsCounter} to enable the statistics,
+	 *     or {@link it.csi.siac.siaccommon.util.cache.stats.DisabledStatsCounter#INSTANCE} to disable them)
+	 */
+	void setStatsCounter(StatsCounter statsCounter);
+	/**
+	 * Obtains a snapshot of the statistics
+	 * @return the statistics
+	 */
+	CacheStats getStats();
+
+}
@@ -4,11 +4,18 @@
 */
 package it.csi.siac.siaccommon.util.cache;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import it.csi.siac.siaccommon.util.cache.stats.CacheStats;
+import it.csi.siac.siaccommon.util.cache.stats.DisabledStatsCounter;
+import it.csi.siac.siaccommon.util.cache.stats.StatsCounter;
+
 /**
  * Cache backed by a map
  * @author Marchino Alessandro
@@ -16,14 +23,22 @@ import java.util.Set;
  * @param <K> the key type
  * @param <V> the value type
  */
-public class MapCache<K, V> implements Cache<K, V> {
+public class MapCache<K, V> implements InstrumentedCache<K, V> {
 
 	/** The underlying map */
 	private final Map<K, V> map = new HashMap<K, V>();
+	/** The recorder of the statistics */
+	private StatsCounter statsCounter = DisabledStatsCounter.INSTANCE;
 
 	@Override
 	public V get(K key) {
-		return map.get(key);
+		V value = map.get(key);
+		if(value != null || map.containsKey(key)) {
+			statsCounter.recordHits(1);
+		} else {
+			statsCounter.recordMisses(1);
+		}
+		return value;
 	}
 
 	@Override
@@ -31,12 +46,98 @@ public class MapCache<K, V> implements Cache<K, V> {
 		if(initializer == null) {
 			throw new NullPointerException("Null initializer");
 		}
-		if(!map.containsKey(key)) {
-			map.put(key, initializer.initialize(key));
+		if(map.containsKey(key)) {
+			statsCounter.recordHits(1);
+		} else {
+			statsCounter.recordMisses(1);
+			long start = System.nanoTime();
+			V value;
+			try {
+				value = initializer.initialize(key);
+			} catch (RuntimeException e) {
+				statsCounter.recordLoadFailure(System.nanoTime() - start);
+				throw e;
+			}
+			recordLoad(value != null, System.nanoTime() - start);
+			map.put(key, value);
 		}
 		return map.get(key);
 	}
 
+	/**
+	 * Records the load statistics, with a <code>null</code> value as a failure as in {@link AbstractCache}
+	 * @param success whether the load was successful
+	 * @param loadTime the load time
+	 */
+	private void recordLoad(boolean success, long loadTime) {
+		if(success) {
+			statsCounter.recordLoadSuccess(loadTime);
+		} else {
+			statsCounter.recordLoadFailure(loadTime);
+		}
+	}
+
+	@Override
+	public Map<K, V> getAll(Collection<? extends K> keys, BulkCacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		Set<K> missingKeys = new LinkedHashSet<K>();
+		int hits = 0;
+		for(K key : new LinkedHashSet<K>(keys)) {
+			if(map.containsKey(key)) {
+				hits++;
+			} else {
+				missingKeys.add(key);
+			}
+		}
+		statsCounter.recordHits(hits);
+		statsCounter.recordMisses(missingKeys.size());
+		if(!missingKeys.isEmpty()) {
+			long start = System.nanoTime();
+			Map<K, V> loaded;
+			try {
+				loaded = initializer.initialize(missingKeys);
+			} catch (RuntimeException e) {
+				statsCounter.recordLoadFailure(System.nanoTime() - start);
+				throw e;
+			}
+			if(loaded == null) {
+				statsCounter.recordLoadFailure(System.nanoTime() - start);
+			} else {
+				statsCounter.recordLoadSuccess(System.nanoTime() - start);
+				for(K key : missingKeys) {
+					// The keys with no value are not cached, so that they are loaded again
+					V value = loaded.get(key);
+					if(value != null) {
+						map.put(key, value);
+					}
+				}
+			}
+		}
+		Map<K, V> result = new LinkedHashMap<K, V>();
+		for(K key : keys) {
+			V value = map.get(key);
+			if(value != null) {
+				result.put(key, value);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void setStatsCounter(StatsCounter statsCounter) {
+		if(statsCounter == null) {
+			throw new NullPointerException("Null stats counter");
+		}
+		this.statsCounter = statsCounter;
+	}
+
+	@Override
+	public CacheStats getStats() {
+		return statsCounter.snapshot(size());
+	}
+
 	@Override
 	public V put(K key, V value) {
 		return map.put(key, value);
@@ -0,0 +1,564 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+import it.csi.siac.siaccommon.util.cache.serializer.CacheSerializer;
+import it.csi.siac.siaccommon.util.log.LogUtil;
+
+/**
+ * Cache storing its values serialized outside of the heap, in direct buffers.
+ * <p>
+ * Only the index of the entries (the key, and the location of the value) is kept on the heap; the values are deserialized
+ * on every read, and are never retained by the cache. It is meant for large, mostly-read tables, whose values would otherwise
+ * crowd the old generation.
+ * <p>
+ * The values are appended to fixed-size segments. The space of the removed or replaced values is reclaimed by a compaction
+ * once the capacity is exhausted, which evacuates the segments one at a time, from the one with the fewest live bytes: the
+ * live values are moved to the segments already evacuated, which are reused, so that the direct memory never exceeds the
+ * capacity (only the live values of a single segment are staged on the heap). A value which does not fit the capacity
+ * even after the compaction is not cached. A value larger than the segment size is stored in a dedicated segment, released
+ * to the garbage collector once the value is removed.
+ * <br>
+ * Reads are lock-free: a read copies the value bytes, and validates them against the reuse of the segment. A read racing
+ * with the compaction of the segment of its value waits for the write lock. Writes are serialized.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class OffHeapCache<K, V> extends AbstractCache<K, V> {
+
+	/** Logger */
+	private static final LogUtil LOG = new LogUtil(OffHeapCache.class);
+	/** The default segment size: 16 MB */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	/** The index of the values */
+	private final ConcurrentMap<K, Slot> index = new ConcurrentHashMap<K, Slot>();
+	/** The serializer of the values */
+	private final CacheSerializer<V> serializer;
+	/** The size of the segments */
+	private final int segmentSize;
+	/** The maximum capacity, in bytes */
+	private final long capacity;
+	/** The lock guarding the writes */
+	private final ReentrantLock writeLock = new ReentrantLock();
+	/** The segments in use. Guarded by the write lock */
+	private List<Segment> segments = new ArrayList<Segment>();
+	/** The segments evacuated by the compaction, to be reused. Guarded by the write lock */
+	private final Deque<Segment> freeSegments = new ArrayDeque<Segment>();
+	/** The segment currently written. Guarded by the write lock */
+	private Segment currentSegment;
+	/** The bytes allocated in the segments, free segments included. Guarded by the write lock */
+	private long allocatedBytes;
+	/** The bytes of the live values. Guarded by the write lock */
+	private long liveBytes;
+	/** The bytes of the removed or replaced values, reclaimable by a compaction. Guarded by the write lock */
+	private long garbageBytes;
+	/** Whether a value has been rejected since the last successful write. Guarded by the write lock */
+	private boolean exhausted;
+	/** The entry set view */
+	private Set<Entry<K, V>> entrySet;
+
+	/**
+	 * Constructor with the default segment size
+	 * @param serializer the serializer of the values
+	 * @param capacity the maximum capacity, in bytes: the direct memory allocated by the cache, compactions included
+	 */
+	public OffHeapCache(CacheSerializer<V> serializer, long capacity) {
+		this(serializer, capacity, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Full constructor
+	 * @param serializer the serializer of the values
+	 * @param capacity the maximum capacity, in bytes: the direct memory allocated by the cache, compactions included
+	 * @param segmentSize the size of the segments, in bytes: also the heap staged by a compaction at most
+	 */
+	public OffHeapCache(CacheSerializer<V> serializer, long capacity, int segmentSize) {
+		if(serializer == null) {
+			throw new NullPointerException("Null serializer");
+		}
+		if(capacity <= 0L || segmentSize <= 0) {
+			throw new IllegalArgumentException("Invalid capacity " + capacity + " or segment size " + segmentSize);
+		}
+		this.serializer = serializer;
+		this.capacity = capacity;
+		this.segmentSize = segmentSize;
+	}
+
+	@Override
+	protected V lookup(K key) {
+		Slot slot = index.get(key);
+		if(slot == null) {
+			return null;
+		}
+		byte[] bytes = slot.tryCopy();
+		if(bytes != null) {
+			return serializer.deserialize(ByteBuffer.wrap(bytes));
+		}
+		// The segment has been reused by a compaction: the value is read again, once moved
+		writeLock.lock();
+		try {
+			slot = index.get(key);
+			return slot != null ? slot.read() : null;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return put(key, value, false);
+	}
+
+	@Override
+	protected V putIfAbsent(K key, V value) {
+		return put(key, value, true);
+	}
+
+	/**
+	 * Sets the value in the cache
+	 * @param key the key to set
+	 * @param value the value to set for the key
+	 * @param onlyIfAbsent whether to keep the value already present for the key
+	 * @return the previous value corresponding to the key, if present
+	 */
+	private V put(K key, V value, boolean onlyIfAbsent) {
+		if(key == null || value == null) {
+			throw new NullPointerException("Null key or value");
+		}
+		byte[] bytes = serializer.serialize(value);
+		writeLock.lock();
+		try {
+			Slot previous = index.get(key);
+			if(previous != null && onlyIfAbsent) {
+				return previous.read();
+			}
+			Slot slot = write(bytes);
+			if(slot == null) {
+				String message = "Off-heap capacity exhausted: value for key " + key + " of " + bytes.length + " bytes not cached";
+				if(exhausted) {
+					LOG.debug("put", message);
+				} else {
+					// Logged once per exhaustion, not on every rejected value
+					LOG.warn("put", message);
+					exhausted = true;
+				}
+				return previous != null ? previous.read() : null;
+			}
+			exhausted = false;
+			index.put(key, slot);
+			liveBytes += bytes.length;
+			if(previous == null) {
+				return null;
+			}
+			release(previous);
+			return previous.read();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public V remove(K key) {
+		writeLock.lock();
+		try {
+			Slot slot = index.remove(key);
+			if(slot == null) {
+				return null;
+			}
+			release(slot);
+			return slot.read();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		if(entrySet == null) {
+			entrySet = new EntrySetView();
+		}
+		return entrySet;
+	}
+
+	@Override
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return index.containsKey(key);
+	}
+
+	/**
+	 * @return the bytes allocated outside of the heap
+	 */
+	public long getAllocatedBytes() {
+		writeLock.lock();
+		try {
+			return allocatedBytes;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the bytes of the values in the cache
+	 */
+	public long getLiveBytes() {
+		writeLock.lock();
+		try {
+			return liveBytes;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the bytes in the segments, compacting them if needed. Must be called under the write lock
+	 * @param bytes the bytes to write
+	 * @return the written slot, <code>null</code> if the capacity is exhausted
+	 */
+	private Slot write(byte[] bytes) {
+		int length = bytes.length;
+		if(!fitsCurrentSegment(length) && !nextSegment(length)) {
+			if(!compact(length)) {
+				return null;
+			}
+			// The value may fit the tail of the compacted segments
+			if(!fitsCurrentSegment(length) && !nextSegment(length)) {
+				return null;
+			}
+		}
+		return append(bytes);
+	}
+
+	/**
+	 * Checks whether the given length fits the current segment. Must be called under the write lock
+	 * @param length the length to write
+	 * @return whether the length fits
+	 */
+	private boolean fitsCurrentSegment(int length) {
+		return currentSegment != null && currentSegment.buffer.remaining() >= length;
+	}
+
+	/**
+	 * Moves to a free segment, or to a new one if it fits the capacity. Must be called under the write lock
+	 * @param length the length to write
+	 * @return whether a segment for the length is available
+	 */
+	private boolean nextSegment(int length) {
+		if(length <= segmentSize && !freeSegments.isEmpty()) {
+			currentSegment = freeSegments.poll();
+			segments.add(currentSegment);
+			return true;
+		}
+		if(allocatedBytes + Math.max(segmentSize, length) > capacity) {
+			return false;
+		}
+		currentSegment = new Segment(ByteBuffer.allocateDirect(Math.max(segmentSize, length)));
+		segments.add(currentSegment);
+		allocatedBytes += currentSegment.buffer.capacity();
+		return true;
+	}
+
+	/**
+	 * Appends the bytes to the current segment. Must be called under the write lock
+	 * @param bytes the bytes
+	 * @return the written slot
+	 */
+	private Slot append(byte[] bytes) {
+		int position = currentSegment.buffer.position();
+		currentSegment.buffer.put(bytes);
+		currentSegment.liveBytes += bytes.length;
+		return new Slot(currentSegment, position, bytes.length);
+	}
+
+	/**
+	 * Moves the value to the current segment. Must be called under the write lock
+	 * @param slot the slot of the value
+	 * @return the new slot
+	 */
+	private Slot move(Slot slot) {
+		int position = currentSegment.buffer.position();
+		currentSegment.buffer.put(slot.view());
+		currentSegment.liveBytes += slot.length;
+		return new Slot(currentSegment, position, slot.length);
+	}
+
+	/**
+	 * Counts the value of the removed or replaced slot as garbage. Must be called under the write lock
+	 * @param slot the slot
+	 */
+	private void release(Slot slot) {
+		liveBytes -= slot.length;
+		garbageBytes += slot.length;
+		slot.segment.liveBytes -= slot.length;
+	}
+
+	/**
+	 * Evacuates the segments one at a time, from the one with the fewest live bytes, moving their live values to the segments
+	 * already evacuated. Must be called under the write lock
+	 * <br>
+	 * The first segments are evacuated while no free segment is available yet: their live values are staged on the heap, and
+	 * written back to the segment itself. Only the space of the removed or replaced values is counted as reclaimable, not the
+	 * unused tail of the segments: a full cache without garbage is not compacted.
+	 * @param pendingLength the length of the value waiting to be written
+	 * @return whether the segments have been compacted
+	 */
+	private boolean compact(int pendingLength) {
+		if(garbageBytes < pendingLength) {
+			// Not enough garbage to reclaim
+			return false;
+		}
+		Map<Segment, List<Entry<K, Slot>>> entriesBySegment = new IdentityHashMap<Segment, List<Entry<K, Slot>>>();
+		for(Entry<K, Slot> entry : index.entrySet()) {
+			List<Entry<K, Slot>> entries = entriesBySegment.get(entry.getValue().segment);
+			if(entries == null) {
+				entries = new ArrayList<Entry<K, Slot>>();
+				entriesBySegment.put(entry.getValue().segment, entries);
+			}
+			entries.add(entry);
+		}
+		List<Segment> sources = segments;
+		Collections.sort(sources, new Comparator<Segment>() {
+			@Override
+			public int compare(Segment s1, Segment s2) {
+				return s1.liveBytes < s2.liveBytes ? -1 : (s1.liveBytes == s2.liveBytes ? 0 : 1);
+			}
+		});
+		segments = new ArrayList<Segment>();
+		currentSegment = null;
+		for(Segment source : sources) {
+			List<Entry<K, Slot>> entries = entriesBySegment.get(source);
+			if(entries == null) {
+				entries = Collections.emptyList();
+			}
+			if(source.buffer.capacity() > segmentSize) {
+				// Dedicated segment of a large value: kept while the value is live, released otherwise
+				if(entries.isEmpty()) {
+					allocatedBytes -= source.buffer.capacity();
+				} else {
+					segments.add(source);
+				}
+				continue;
+			}
+			int moved = 0;
+			for(; moved < entries.size(); moved++) {
+				Entry<K, Slot> entry = entries.get(moved);
+				if(!fitsCurrentSegment(entry.getValue().length)) {
+					currentSegment = freeSegments.poll();
+					if(currentSegment == null) {
+						break;
+					}
+					segments.add(currentSegment);
+				}
+				entry.setValue(move(entry.getValue()));
+			}
+			if(moved == entries.size()) {
+				source.reset();
+				freeSegments.add(source);
+				continue;
+			}
+			// No free segment: the remaining values are written back to the segment itself
+			List<byte[]> staged = new ArrayList<byte[]>(entries.size() - moved);
+			for(int i = moved; i < entries.size(); i++) {
+				staged.add(entries.get(i).getValue().copy());
+			}
+			source.reset();
+			currentSegment = source;
+			segments.add(source);
+			for(int i = moved; i < entries.size(); i++) {
+				entries.get(i).setValue(append(staged.get(i - moved)));
+			}
+		}
+		garbageBytes = 0L;
+		return true;
+	}
+
+	/**
+	 * Segment of the values. Its reuse by a compaction is signalled to the lock-free reads by its lock
+	 */
+	private static final class Segment {
+		/** The buffer */
+		final ByteBuffer buffer;
+		/** The lock, write-locked while the segment is reset for its reuse */
+		final StampedLock lock = new StampedLock();
+		/** The number of resets. Written under the segment lock */
+		int generation;
+		/** The bytes of the live values. Guarded by the write lock of the cache */
+		long liveBytes;
+
+		/**
+		 * Constructor
+		 * @param buffer the buffer
+		 */
+		Segment(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Resets the segment for its reuse, invalidating its slots. Must be called under the write lock of the cache
+		 */
+		void reset() {
+			long stamp = lock.writeLock();
+			try {
+				generation++;
+				buffer.clear();
+				liveBytes = 0L;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/**
+	 * Location of a value in a segment
+	 */
+	private final class Slot {
+		/** The segment */
+		private final Segment segment;
+		/** The generation of the segment when written */
+		private final int generation;
+		/** The offset in the segment */
+		private final int offset;
+		/** The length of the value */
+		private final int length;
+
+		/**
+		 * Constructor
+		 * @param segment the segment
+		 * @param offset the offset in the segment
+		 * @param length the length of the value
+		 */
+		Slot(Segment segment, int offset, int length) {
+			this.segment = segment;
+			this.generation = segment.generation;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * @return a view of the value bytes
+		 */
+		private ByteBuffer view() {
+			ByteBuffer view = segment.buffer.duplicate();
+			view.limit(offset + length);
+			view.position(offset);
+			return view.slice();
+		}
+
+		/**
+		 * Deserializes the value. Must be called under the write lock of the cache
+		 * @return the value
+		 */
+		V read() {
+			return serializer.deserialize(view());
+		}
+
+		/**
+		 * Copies the value bytes. Must be called under the write lock of the cache
+		 * @return the bytes
+		 */
+		byte[] copy() {
+			byte[] bytes = new byte[length];
+			view().get(bytes);
+			return bytes;
+		}
+
+		/**
+		 * Copies the value bytes without locking
+		 * @return the bytes, <code>null</code> if the segment has been reused by a compaction
+		 */
+		byte[] tryCopy() {
+			long stamp = segment.lock.tryOptimisticRead();
+			if(stamp == 0L || segment.generation != generation) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			view().get(bytes);
+			return segment.lock.validate(stamp) ? bytes : null;
+		}
+	}
+
+	/**
+	 * View of the cache entries, deserializing the values while iterating
+	 */
+	private final class EntrySetView extends AbstractSet<Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return index.size();
+		}
+
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			final Iterator<K> iterator = index.keySet().iterator();
+			return new Iterator<Entry<K, V>>() {
+				private Entry<K, V> next = advance();
+				private K currentKey;
+
+				private Entry<K, V> advance() {
+					while(iterator.hasNext()) {
+						K key = iterator.next();
+						V value = lookup(key);
+						if(value != null) {
+							return new SimpleImmutableEntry<K, V>(key, value);
+						}
+					}
+					return null;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public Entry<K, V> next() {
+					if(next == null) {
+						throw new NoSuchElementException();
+					}
+					Entry<K, V> current = next;
+					next = advance();
+					currentKey = current.getKey();
+					return current;
+				}
+
+				@Override
+				public void remove() {
+					if(currentKey == null) {
+						throw new IllegalStateException();
+					}
+					OffHeapCache.this.remove(currentKey);
+					currentKey = null;
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,260 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.csi.siac.siaccommon.util.threadlocal.ThreadLocalUtil;
+import it.csi.siac.siaccommon.util.threadlocal.starter.ThreadLocalStarter;
+
+/**
+ * Two-level cache: a small, bounded, per-thread L1 cache in front of a shared L2 cache.
+ * <p>
+ * The L1 caches are plain hash maps, read without concurrent structures nor memory barriers but for a single volatile read,
+ * and are cleared once full. They are registered in the {@link ThreadLocalUtil} registry, and thus cleared at the end of
+ * every request by {@link ThreadLocalUtil#cleanThreadLocals()}.
+ * <br>
+ * Every write or removal through this cache increments an epoch: the L1 caches check the epoch on every access, and are
+ * cleared once it changes. The writes performed directly on the L2 cache are not tracked, and require a call to {@link #invalidateLocalCaches()}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class TwoLevelCache<K, V> extends AbstractCache<K, V> {
+
+	/** The shared L2 cache */
+	private final Cache<K, V> level2;
+	/** The per-thread L1 caches */
+	private final ThreadLocal<Level1<K, V>> level1;
+	/** The epoch of the L2 cache, incremented on every write */
+	private final AtomicLong epoch = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param name the name of the cache, unique application-wide, with which the L1 caches are registered in the {@link ThreadLocalUtil} registry
+	 * @param level2 the shared L2 cache
+	 * @param level1MaximumSize the maximum number of entries of each L1 cache
+	 */
+	public TwoLevelCache(String name, Cache<K, V> level2, int level1MaximumSize) {
+		if(level2 == null) {
+			throw new NullPointerException("Null L2 cache");
+		}
+		if(level1MaximumSize <= 0) {
+			throw new IllegalArgumentException("Invalid L1 maximum size " + level1MaximumSize);
+		}
+		this.level2 = level2;
+		this.level1 = ThreadLocalUtil.registerThreadLocal(TwoLevelCache.class, new Level1Starter<K, V>(name, level1MaximumSize));
+	}
+
+	@Override
+	protected V lookup(K key) {
+		Level1<K, V> l1 = level1();
+		V value = l1.get(key);
+		if(value == null) {
+			value = level2.get(key);
+			if(value != null) {
+				l1.put(key, value);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public V get(K key, CacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		Level1<K, V> l1 = level1();
+		V value = l1.get(key);
+		if(value != null) {
+			getStatsCounter().recordHits(1);
+			return value;
+		}
+		getStatsCounter().recordMisses(1);
+		// The L2 cache loads the value with its own policy
+		value = level2.get(key, initializer);
+		if(value != null) {
+			l1.put(key, value);
+		}
+		return value;
+	}
+
+	@Override
+	public Map<K, V> getAll(Collection<? extends K> keys, BulkCacheElementInitializer<K, V> initializer) {
+		if(initializer == null) {
+			throw new NullPointerException("Null initializer");
+		}
+		Map<K, V> values = level2.getAll(keys, initializer);
+		Level1<K, V> l1 = level1();
+		for(Entry<K, V> entry : values.entrySet()) {
+			l1.put(entry.getKey(), entry.getValue());
+		}
+		return values;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		V previous = level2.put(key, value);
+		invalidateLocalCaches();
+		return previous;
+	}
+
+	@Override
+	protected V putIfAbsent(K key, V value) {
+		V existing = level2.get(key);
+		if(existing != null) {
+			return existing;
+		}
+		level2.put(key, value);
+		invalidateLocalCaches();
+		return null;
+	}
+
+	@Override
+	public V remove(K key) {
+		V previous = level2.remove(key);
+		invalidateLocalCaches();
+		return previous;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <br>
+	 * The entries are the ones of the L2 cache, and are not modifiable
+	 */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return Collections.unmodifiableSet(level2.entrySet());
+	}
+
+	@Override
+	public int size() {
+		return level2.size();
+	}
+
+	@Override
+	public boolean containsKey(K key) {
+		return level2.containsKey(key);
+	}
+
+	/**
+	 * Invalidates the L1 caches of all the threads, e.g. after a write performed directly on the L2 cache
+	 */
+	public void invalidateLocalCaches() {
+		epoch.incrementAndGet();
+	}
+
+	/**
+	 * Obtains the L1 cache of the current thread, clearing it if the epoch has changed.
+	 * The epoch is read before any access to the L2 cache, so that a concurrent write is never missed
+	 * @return the L1 cache
+	 */
+	private Level1<K, V> level1() {
+		Level1<K, V> l1 = level1.get();
+		long currentEpoch = epoch.get();
+		if(l1.epoch != currentEpoch) {
+			l1.clear();
+			l1.epoch = currentEpoch;
+		}
+		return l1;
+	}
+
+	/**
+	 * Per-thread L1 cache. Being meant for the hottest keys of a request, it is simply cleared once full,
+	 * rather than paying for an access order on every read
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	private static final class Level1<K, V> {
+
+		/** The entries */
+		private final Map<K, V> map = new HashMap<K, V>();
+		/** The maximum number of entries */
+		private final int maximumSize;
+		/** The epoch of the L2 cache when the entries were read */
+		long epoch;
+
+		/**
+		 * Constructor
+		 * @param maximumSize the maximum number of entries
+		 */
+		Level1(int maximumSize) {
+			this.maximumSize = maximumSize;
+		}
+
+		/**
+		 * @param key the key
+		 * @return the value for the key
+		 */
+		V get(K key) {
+			return map.get(key);
+		}
+
+		/**
+		 * @param key the key
+		 * @param value the value for the key
+		 */
+		void put(K key, V value) {
+			if(map.size() >= maximumSize) {
+				map.clear();
+			}
+			map.put(key, value);
+		}
+
+		/**
+		 * Removes all the entries
+		 */
+		void clear() {
+			map.clear();
+		}
+	}
+
+	/**
+	 * Starter for the L1 thread-local
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	private static final class Level1Starter<K, V> implements ThreadLocalStarter<Level1<K, V>> {
+
+		/** The name of the cache */
+		private final String name;
+		/** The maximum number of entries of the L1 cache */
+		private final int maximumSize;
+
+		/**
+		 * Constructor
+		 * @param name the name of the cache
+		 * @param maximumSize the maximum number of entries of the L1 cache
+		 */
+		Level1Starter(String name, int maximumSize) {
+			this.name = name;
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		public ThreadLocal<Level1<K, V>> initialize() {
+			return new ThreadLocal<Level1<K, V>>() {
+				@Override
+				protected Level1<K, V> initialValue() {
+					return new Level1<K, V>(maximumSize);
+				}
+			};
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache;
+
+/**
+ * Computes the weight of a cache entry, for the caches bounded by weight
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public interface Weigher<K, V> {
+
+	/**
+	 * Computes the weight of the entry. The weight is computed when the entry is set, and is not re-evaluated afterwards
+	 * @param key the key of the entry
+	 * @param value the value of the entry
+	 * @return the weight of the entry, not negative
+	 */
+	int weigh(K key, V value);
+
+}
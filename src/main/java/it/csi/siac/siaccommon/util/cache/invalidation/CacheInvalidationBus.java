@@ -0,0 +1,314 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.invalidation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import it.csi.siac.siaccommon.util.SystemInfo;
+import it.csi.siac.siaccommon.util.cache.Cache;
+import it.csi.siac.siaccommon.util.log.LogUtil;
+
+/**
+ * Bus propagating the invalidations of the caches to the peer nodes.
+ * <p>
+ * The invalidations are applied to the local cache immediately, and are published to the peers in batches, at a fixed interval
+ * or as soon as a batch is full. The invalidations pending for the same cache are coalesced: the keys are deduplicated, and the
+ * invalidation of the whole cache supersedes the ones of the single keys. A batch whose publication fails is merged back into the
+ * pending invalidations, and published again with the next batch; the keys beyond the maximum batch size are widened to the
+ * invalidation of the whole cache, so that the pending invalidations stay bounded while the transport is unavailable.
+ * <br>
+ * The nodes are identified by the JBoss node name, and only the events of the same JBoss partition are applied.
+ * The events are applied to the caches registered with the same name on the receiving node.
+ */
+public class CacheInvalidationBus implements InvalidationListener {
+
+	/** Logger */
+	private static final LogUtil LOG = new LogUtil(CacheInvalidationBus.class);
+	/** The default partition name, when not running in a JBoss partition */
+	private static final String DEFAULT_PARTITION_NAME = "DefaultPartition";
+	/** The default maximum number of keys of a batch */
+	private static final int DEFAULT_MAXIMUM_BATCH_SIZE = 1000;
+
+	/** The name of the current node */
+	private final String nodeName;
+	/** The name of the partition */
+	private final String partitionName;
+	/** The transport */
+	private final InvalidationTransport transport;
+	/** The registered caches, by name */
+	private final ConcurrentMap<String, Cache<?, ?>> caches = new ConcurrentHashMap<String, Cache<?, ?>>();
+	/** The lock guarding the pending invalidations */
+	private final ReentrantLock pendingLock = new ReentrantLock();
+	/** The pending invalidations, by cache name. Guarded by the pending lock */
+	private Map<String, PendingInvalidation> pending = new HashMap<String, PendingInvalidation>();
+	/** The number of pending keys. Guarded by the pending lock */
+	private int pendingKeys;
+	/** The maximum number of keys of a batch */
+	private final int maximumBatchSize;
+	/** The executor for the publication */
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * Constructor for the current JBoss node and partition
+	 * @param transport the transport
+	 * @param flushInterval the interval between the publications
+	 * @param unit the time unit of the interval
+	 */
+	public CacheInvalidationBus(InvalidationTransport transport, long flushInterval, TimeUnit unit) {
+		this(SystemInfo.getJbossNodeName(), SystemInfo.getJbossPartitionName(), transport, flushInterval, unit, DEFAULT_MAXIMUM_BATCH_SIZE);
+	}
+
+	/**
+	 * Full constructor
+	 * @param nodeName the name of the current node (a random name is used if <code>null</code>)
+	 * @param partitionName the name of the partition (a default name is used if <code>null</code>)
+	 * @param transport the transport
+	 * @param flushInterval the interval between the publications
+	 * @param unit the time unit of the interval
+	 * @param maximumBatchSize the number of keys causing the immediate publication of the batch
+	 */
+	public CacheInvalidationBus(String nodeName, String partitionName, InvalidationTransport transport, long flushInterval, TimeUnit unit, int maximumBatchSize) {
+		if(transport == null) {
+			throw new NullPointerException("Null transport");
+		}
+		if(flushInterval <= 0L || maximumBatchSize <= 0) {
+			throw new IllegalArgumentException("Invalid flush interval " + flushInterval + " or batch size " + maximumBatchSize);
+		}
+		this.nodeName = nodeName != null ? nodeName : UUID.randomUUID().toString();
+		this.partitionName = partitionName != null ? partitionName : DEFAULT_PARTITION_NAME;
+		this.transport = transport;
+		this.maximumBatchSize = maximumBatchSize;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("cache-invalidation-" + this.nodeName));
+		this.executor.scheduleWithFixedDelay(new FlushTask(), flushInterval, flushInterval, unit);
+		transport.subscribe(this);
+	}
+
+	/**
+	 * Registers the cache, so that it receives the invalidations of the peers
+	 * @param cacheName the name of the cache, shared by the nodes
+	 * @param cache the cache
+	 */
+	public void register(String cacheName, Cache<?, ?> cache) {
+		caches.put(cacheName, cache);
+	}
+
+	/**
+	 * Invalidates the key in the local cache and in the peers
+	 * @param cacheName the name of the cache
+	 * @param key the key to invalidate
+	 */
+	public void invalidate(String cacheName, Object key) {
+		removeKey(caches.get(cacheName), key);
+		boolean full;
+		pendingLock.lock();
+		try {
+			PendingInvalidation invalidation = pendingInvalidation(cacheName);
+			if(!invalidation.all && invalidation.keys.add(key)) {
+				pendingKeys++;
+			}
+			full = pendingKeys >= maximumBatchSize;
+		} finally {
+			pendingLock.unlock();
+		}
+		if(full) {
+			executor.execute(new FlushTask());
+		}
+	}
+
+	/**
+	 * Invalidates the whole local cache and the peers
+	 * @param cacheName the name of the cache
+	 */
+	public void invalidateAll(String cacheName) {
+		clear(caches.get(cacheName));
+		pendingLock.lock();
+		try {
+			PendingInvalidation invalidation = pendingInvalidation(cacheName);
+			pendingKeys -= invalidation.keys.size();
+			invalidation.keys.clear();
+			invalidation.all = true;
+		} finally {
+			pendingLock.unlock();
+		}
+	}
+
+	/**
+	 * Publishes the pending invalidations. If the publication fails, the invalidations are kept pending
+	 */
+	public void flush() {
+		Map<String, PendingInvalidation> batch;
+		pendingLock.lock();
+		try {
+			if(pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new HashMap<String, PendingInvalidation>();
+			pendingKeys = 0;
+		} finally {
+			pendingLock.unlock();
+		}
+		List<InvalidationEvent> events = new ArrayList<InvalidationEvent>(batch.size());
+		for(Entry<String, PendingInvalidation> entry : batch.entrySet()) {
+			events.add(new InvalidationEvent(partitionName, nodeName, entry.getKey(), entry.getValue().all, entry.getValue().keys));
+		}
+		boolean published = false;
+		try {
+			transport.publish(events);
+			published = true;
+		} finally {
+			if(!published) {
+				restore(batch);
+			}
+		}
+	}
+
+	/**
+	 * Merges the batch whose publication failed back into the pending invalidations
+	 * @param batch the batch
+	 */
+	private void restore(Map<String, PendingInvalidation> batch) {
+		pendingLock.lock();
+		try {
+			for(Entry<String, PendingInvalidation> entry : batch.entrySet()) {
+				PendingInvalidation invalidation = pendingInvalidation(entry.getKey());
+				if(invalidation.all) {
+					continue;
+				}
+				PendingInvalidation failed = entry.getValue();
+				if(failed.all || invalidation.keys.size() + failed.keys.size() > maximumBatchSize) {
+					// Widened, so that the pending keys do not grow while the transport is unavailable
+					pendingKeys -= invalidation.keys.size();
+					invalidation.keys.clear();
+					invalidation.all = true;
+					continue;
+				}
+				for(Object key : failed.keys) {
+					if(invalidation.keys.add(key)) {
+						pendingKeys++;
+					}
+				}
+			}
+		} finally {
+			pendingLock.unlock();
+		}
+	}
+
+	/**
+	 * Publishes the pending invalidations, and stops the bus
+	 */
+	public void close() {
+		executor.shutdown();
+		flush();
+		transport.close();
+	}
+
+	@Override
+	public void onInvalidation(InvalidationEvent event) {
+		if(nodeName.equals(event.getSourceNodeName()) || !partitionName.equals(event.getPartitionName())) {
+			// Own event, or event of another partition
+			return;
+		}
+		Cache<?, ?> cache = caches.get(event.getCacheName());
+		if(cache == null) {
+			return;
+		}
+		if(event.isAll()) {
+			clear(cache);
+			return;
+		}
+		for(Object key : event.getKeys()) {
+			removeKey(cache, key);
+		}
+	}
+
+	/**
+	 * @return the name of the current node
+	 */
+	public String getNodeName() {
+		return nodeName;
+	}
+
+	/**
+	 * Obtains the pending invalidation of the cache. Must be called under the pending lock
+	 * @param cacheName the name of the cache
+	 * @return the pending invalidation
+	 */
+	private PendingInvalidation pendingInvalidation(String cacheName) {
+		PendingInvalidation invalidation = pending.get(cacheName);
+		if(invalidation == null) {
+			invalidation = new PendingInvalidation();
+			pending.put(cacheName, invalidation);
+		}
+		return invalidation;
+	}
+
+	/**
+	 * Removes the key from the cache
+	 * @param cache the cache (may be <code>null</code>)
+	 * @param key the key
+	 */
+	@SuppressWarnings("unchecked")
+	private static void removeKey(Cache<?, ?> cache, Object key) {
+		if(cache != null) {
+			((Cache<Object, ?>) cache).remove(key);
+		}
+	}
+
+	/**
+	 * Removes all the keys from the cache
+	 * @param cache the cache (may be <code>null</code>)
+	 */
+	private static void clear(Cache<?, ?> cache) {
+		if(cache == null) {
+			return;
+		}
+		List<Object> keys = new ArrayList<Object>(cache.size());
+		for(Entry<?, ?> entry : cache.entrySet()) {
+			keys.add(entry.getKey());
+		}
+		for(Object key : keys) {
+			removeKey(cache, key);
+		}
+	}
+
+	/**
+	 * Invalidation of a cache waiting to be published
+	 */
+	private static class PendingInvalidation {
+		/** Whether the whole cache is invalidated */
+		boolean all;
+		/** The invalidated keys */
+		final Set<Object> keys = new LinkedHashSet<Object>();
+	}
+
+	/**
+	 * Publication of the pending invalidations
+	 */
+	private class FlushTask implements Runnable {
+		@Override
+		public void run() {
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				LOG.error("flush", "Unable to publish the cache invalidations: they will be published with the next batch", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.invalidation;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of named daemon threads, so that the invalidation threads never prevent the JVM shutdown
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	/** The prefix of the thread names */
+	private final String prefix;
+	/** The thread counter */
+	private final AtomicInteger counter = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 * @param prefix the prefix of the thread names
+	 */
+	DaemonThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
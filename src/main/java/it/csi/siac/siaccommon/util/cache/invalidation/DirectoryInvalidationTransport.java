@@ -0,0 +1,405 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.invalidation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+
+import it.csi.siac.siaccommon.util.log.LogUtil;
+
+/**
+ * Transport exchanging the events through a directory shared by the nodes, e.g. on the same host or on a shared file system.
+ * <p>
+ * Every batch is written to a temporary file and then moved to its final name, so that the readers never see a partial batch.
+ * The directory is polled at a fixed interval; the batches older than the retention are deleted by any of the nodes.
+ * The batches already present when subscribing are not delivered.
+ * <br>
+ * The batches are written in a plain binary format, not by Java serialization, so that reading a file dropped in the directory
+ * never instantiates arbitrary classes. The keys of type <code>String</code>, boxed primitive, <code>BigDecimal</code> and
+ * <code>BigInteger</code> are transported as such; an event with keys of any other type is published as the invalidation of
+ * the whole cache.
+ */
+public class DirectoryInvalidationTransport implements InvalidationTransport {
+
+	/** Logger */
+	private static final LogUtil LOG = new LogUtil(DirectoryInvalidationTransport.class);
+	/** The suffix of the batch files */
+	private static final String BATCH_SUFFIX = ".inv";
+	/** The suffix of the temporary files */
+	private static final String TEMP_SUFFIX = ".tmp";
+	/** The number of poll intervals a batch is retained for */
+	private static final int RETENTION_INTERVALS = 100;
+	/** The header of the batch files: "INV" and the version of the format */
+	private static final int MAGIC = 0x494E5601;
+	/** The maximum length of a string, in bytes, for {@link DataOutputStream#writeUTF(String)} */
+	private static final int MAX_UTF_LENGTH = 65535;
+	/** The tags of the types of the keys */
+	private static final byte TAG_STRING = 1;
+	private static final byte TAG_INTEGER = 2;
+	private static final byte TAG_LONG = 3;
+	private static final byte TAG_SHORT = 4;
+	private static final byte TAG_BYTE = 5;
+	private static final byte TAG_BOOLEAN = 6;
+	private static final byte TAG_CHARACTER = 7;
+	private static final byte TAG_DOUBLE = 8;
+	private static final byte TAG_FLOAT = 9;
+	private static final byte TAG_BIG_DECIMAL = 10;
+	private static final byte TAG_BIG_INTEGER = 11;
+
+	/** The shared directory */
+	private final File directory;
+	/** The retention of the batches, in milliseconds */
+	private final long retentionMillis;
+	/** The prefix of the files written by this instance */
+	private final String filePrefix = UUID.randomUUID().toString();
+	/** The counter of the files written by this instance */
+	private final AtomicLong fileCounter = new AtomicLong();
+	/** The subscribers */
+	private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+	/** The names of the batches already processed. Accessed by the poller thread only */
+	private final Set<String> processed = new HashSet<String>();
+	/** The poller */
+	private final ScheduledExecutorService poller;
+
+	/**
+	 * Constructor
+	 * @param directory the shared directory, created if missing
+	 * @param pollInterval the interval between the polls of the directory
+	 * @param unit the time unit of the interval
+	 */
+	public DirectoryInvalidationTransport(File directory, long pollInterval, TimeUnit unit) {
+		if(directory == null) {
+			throw new NullPointerException("Null directory");
+		}
+		if(pollInterval <= 0L) {
+			throw new IllegalArgumentException("Invalid poll interval " + pollInterval);
+		}
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Unable to create directory " + directory);
+		}
+		this.directory = directory;
+		this.retentionMillis = Math.max(unit.toMillis(pollInterval) * RETENTION_INTERVALS, 60000L);
+		// The batches already present are not of interest for a node just started
+		processed.addAll(Arrays.asList(listBatches()));
+		this.poller = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("cache-invalidation-poller"));
+		this.poller.scheduleWithFixedDelay(new PollTask(), pollInterval, pollInterval, unit);
+	}
+
+	@Override
+	public void subscribe(InvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void publish(List<InvalidationEvent> events) {
+		// Zero-padded, so that the names sort in the order of publication
+		String name = String.format("%s-%019d", filePrefix, Long.valueOf(fileCounter.incrementAndGet()));
+		File temp = new File(directory, name + TEMP_SUFFIX);
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			writeBatch(out, events);
+			out.close();
+			Files.move(temp.toPath(), new File(directory, name + BATCH_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			temp.delete();
+			throw new IllegalStateException("Unable to publish the invalidation batch " + name, e);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	@Override
+	public void close() {
+		poller.shutdown();
+		listeners.clear();
+	}
+
+	/**
+	 * @return the names of the batches in the directory
+	 */
+	private String[] listBatches() {
+		String[] names = directory.list();
+		if(names == null) {
+			return new String[0];
+		}
+		List<String> batches = new ArrayList<String>(names.length);
+		for(String name : names) {
+			if(name.endsWith(BATCH_SUFFIX)) {
+				batches.add(name);
+			}
+		}
+		return batches.toArray(new String[batches.size()]);
+	}
+
+	/**
+	 * Delivers the batches not yet processed, and deletes the expired ones. Runs on the poller thread
+	 */
+	private void poll() {
+		final String methodName = "poll";
+		String[] batches = listBatches();
+		// Batches are named by publisher and zero-padded counter: sorting keeps the order of each publisher
+		Arrays.sort(batches);
+		long expiration = System.currentTimeMillis() - retentionMillis;
+		Set<String> present = new HashSet<String>(Arrays.asList(batches));
+		for(String name : batches) {
+			File file = new File(directory, name);
+			if(processed.add(name)) {
+				deliver(file);
+			}
+			long lastModified = file.lastModified();
+			if(lastModified != 0L && lastModified < expiration && file.delete()) {
+				LOG.debug(methodName, "Deleted expired invalidation batch " + name);
+			}
+		}
+		// Forgets the batches deleted in the meantime
+		for(Iterator<String> it = processed.iterator(); it.hasNext();) {
+			if(!present.contains(it.next())) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Delivers the batch to the subscribers
+	 * @param file the batch file
+	 */
+	private void deliver(File file) {
+		final String methodName = "deliver";
+		List<InvalidationEvent> events;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			events = readBatch(in);
+		} catch (IOException e) {
+			LOG.warn(methodName, "Unreadable invalidation batch " + file, e);
+			return;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		for(InvalidationListener listener : listeners) {
+			for(InvalidationEvent event : events) {
+				listener.onInvalidation(event);
+			}
+		}
+	}
+
+	/**
+	 * Writes the batch
+	 * @param out the output
+	 * @param events the events
+	 * @throws IOException in case of I/O error
+	 */
+	private static void writeBatch(DataOutputStream out, List<InvalidationEvent> events) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(events.size());
+		for(InvalidationEvent event : events) {
+			boolean all = event.isAll() || !isTransportable(event.getKeys());
+			writeString(out, event.getPartitionName());
+			writeString(out, event.getSourceNodeName());
+			writeString(out, event.getCacheName());
+			out.writeBoolean(all);
+			if(all) {
+				out.writeInt(0);
+				continue;
+			}
+			out.writeInt(event.getKeys().size());
+			for(Object key : event.getKeys()) {
+				writeKey(out, key);
+			}
+		}
+	}
+
+	/**
+	 * Reads a batch written by {@link #writeBatch(DataOutputStream, List)}
+	 * @param in the input
+	 * @return the events
+	 * @throws IOException in case of I/O error, or of invalid content
+	 */
+	private static List<InvalidationEvent> readBatch(DataInputStream in) throws IOException {
+		if(in.readInt() != MAGIC) {
+			throw new IOException("Invalid header");
+		}
+		int size = readCount(in);
+		List<InvalidationEvent> events = new ArrayList<InvalidationEvent>();
+		for(int i = 0; i < size; i++) {
+			String partitionName = readString(in);
+			String sourceNodeName = readString(in);
+			String cacheName = readString(in);
+			boolean all = in.readBoolean();
+			int keyCount = readCount(in);
+			List<Object> keys = new ArrayList<Object>();
+			for(int j = 0; j < keyCount; j++) {
+				keys.add(readKey(in));
+			}
+			events.add(new InvalidationEvent(partitionName, sourceNodeName, cacheName, all, keys));
+		}
+		return events;
+	}
+
+	private static int readCount(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if(count < 0) {
+			throw new IOException("Invalid count " + count);
+		}
+		return count;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if(value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * @param keys the keys
+	 * @return whether all the keys can be written by {@link #writeKey(DataOutputStream, Object)}
+	 */
+	private static boolean isTransportable(Collection<?> keys) {
+		for(Object key : keys) {
+			if(key == null) {
+				return false;
+			}
+			Class<?> type = key.getClass();
+			if(type == String.class) {
+				// Upper bound of the length in modified UTF-8
+				if(((String) key).length() * 3 > MAX_UTF_LENGTH) {
+					return false;
+				}
+			} else if(type == BigDecimal.class || type == BigInteger.class) {
+				if(key.toString().length() > MAX_UTF_LENGTH) {
+					return false;
+				}
+			} else if(type != Integer.class && type != Long.class && type != Short.class && type != Byte.class && type != Boolean.class
+					&& type != Character.class && type != Double.class && type != Float.class) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeKey(DataOutputStream out, Object key) throws IOException {
+		Class<?> type = key.getClass();
+		if(type == String.class) {
+			out.writeByte(TAG_STRING);
+			out.writeUTF((String) key);
+		} else if(type == Integer.class) {
+			out.writeByte(TAG_INTEGER);
+			out.writeInt(((Integer) key).intValue());
+		} else if(type == Long.class) {
+			out.writeByte(TAG_LONG);
+			out.writeLong(((Long) key).longValue());
+		} else if(type == Short.class) {
+			out.writeByte(TAG_SHORT);
+			out.writeShort(((Short) key).shortValue());
+		} else if(type == Byte.class) {
+			out.writeByte(TAG_BYTE);
+			out.writeByte(((Byte) key).byteValue());
+		} else if(type == Boolean.class) {
+			out.writeByte(TAG_BOOLEAN);
+			out.writeBoolean(((Boolean) key).booleanValue());
+		} else if(type == Character.class) {
+			out.writeByte(TAG_CHARACTER);
+			out.writeChar(((Character) key).charValue());
+		} else if(type == Double.class) {
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble(((Double) key).doubleValue());
+		} else if(type == Float.class) {
+			out.writeByte(TAG_FLOAT);
+			out.writeFloat(((Float) key).floatValue());
+		} else if(type == BigDecimal.class) {
+			out.writeByte(TAG_BIG_DECIMAL);
+			out.writeUTF(key.toString());
+		} else if(type == BigInteger.class) {
+			out.writeByte(TAG_BIG_INTEGER);
+			out.writeUTF(key.toString());
+		} else {
+			throw new IllegalArgumentException("Unsupported key type " + type.getName());
+		}
+	}
+
+	private static Object readKey(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+			case TAG_STRING:
+				return in.readUTF();
+			case TAG_INTEGER:
+				return Integer.valueOf(in.readInt());
+			case TAG_LONG:
+				return Long.valueOf(in.readLong());
+			case TAG_SHORT:
+				return Short.valueOf(in.readShort());
+			case TAG_BYTE:
+				return Byte.valueOf(in.readByte());
+			case TAG_BOOLEAN:
+				return Boolean.valueOf(in.readBoolean());
+			case TAG_CHARACTER:
+				return Character.valueOf(in.readChar());
+			case TAG_DOUBLE:
+				return Double.valueOf(in.readDouble());
+			case TAG_FLOAT:
+				return Float.valueOf(in.readFloat());
+			case TAG_BIG_DECIMAL:
+				try {
+					return new BigDecimal(in.readUTF());
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid BigDecimal key", e);
+				}
+			case TAG_BIG_INTEGER:
+				try {
+					return new BigInteger(in.readUTF());
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid BigInteger key", e);
+				}
+			default:
+				throw new IOException("Invalid key tag " + tag);
+		}
+	}
+
+	/**
+	 * Poll of the directory
+	 */
+	private class PollTask implements Runnable {
+		@Override
+		public void run() {
+			try {
+				poll();
+			} catch (RuntimeException e) {
+				LOG.error("poll", "Error in polling the invalidation batches in " + directory, e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.invalidation;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Invalidation of the keys of a cache, or of the whole cache, published by a node.
+ * <p>
+ * The keys must be serializable, for the transports crossing the JVM boundaries; the transports may restrict the types of
+ * the keys they carry, see {@link DirectoryInvalidationTransport}.
+ */
+public class InvalidationEvent implements Serializable {
+
+	/** For serialization purpose */
+	private static final long serialVersionUID = 4026395727402437869L;
+
+	/** The name of the partition of the nodes */
+	private final String partitionName;
+	/** The name of the publishing node */
+	private final String sourceNodeName;
+	/** The name of the cache */
+	private final String cacheName;
+	/** Whether the whole cache is invalidated */
+	private final boolean all;
+	/** The invalidated keys */
+	private final Set<Object> keys;
+
+	/**
+	 * Full constructor
+	 * @param partitionName the name of the partition of the nodes
+	 * @param sourceNodeName the name of the publishing node
+	 * @param cacheName the name of the cache
+	 * @param all whether the whole cache is invalidated
+	 * @param keys the invalidated keys, if not invalidating the whole cache
+	 */
+	public InvalidationEvent(String partitionName, String sourceNodeName, String cacheName, boolean all, Collection<?> keys) {
+		this.partitionName = partitionName;
+		this.sourceNodeName = sourceNodeName;
+		this.cacheName = cacheName;
+		this.all = all;
+		this.keys = all || keys == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<Object>(keys));
+	}
+
+	/**
+	 * @return the partitionName
+	 */
+	public String getPartitionName() {
+		return partitionName;
+	}
+
+	/**
+	 * @return the sourceNodeName
+	 */
+	public String getSourceNodeName() {
+		return sourceNodeName;
+	}
+
+	/**
+	 * @return the cacheName
+	 */
+	public String getCacheName() {
+		return cacheName;
+	}
+
+	/**
+	 * @return whether the whole cache is invalidated
+	 */
+	public boolean isAll() {
+		return all;
+	}
+
+	/**
+	 * @return the keys
+	 */
+	public Set<Object> getKeys() {
+		return keys;
+	}
+
+	@Override
+	public String toString() {
+		return "InvalidationEvent [partitionName=" + partitionName + ", sourceNodeName=" + sourceNodeName + ", cacheName=" + cacheName
+			+ ", all=" + all + ", keys=" + keys.size() + "]";
+	}
+
+}
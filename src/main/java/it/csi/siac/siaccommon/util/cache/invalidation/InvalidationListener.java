@@ -0,0 +1,18 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.invalidation;
+
+/**
+ * Receiver of the invalidation events
+ */
+public interface InvalidationListener {
+
+	/**
+	 * Applies the invalidation
+	 * @param event the event
+	 */
+	void onInvalidation(InvalidationEvent event);
+
+}
@@ -0,0 +1,31 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.invalidation;
+
+import java.util.List;
+
+/**
+ * Transport of the invalidation events between the nodes.
+ * <p>
+ * The events are delivered to all the subscribers, the publishing node included: the filtering of the own events is up to the receivers
+ */
+public interface InvalidationTransport {
+
+	/**
+	 * Subscribes the listener to the events published by all the nodes
+	 * @param listener the listener
+	 */
+	void subscribe(InvalidationListener listener);
+	/**
+	 * Publishes a batch of events
+	 * @param events the events
+	 */
+	void publish(List<InvalidationEvent> events);
+	/**
+	 * Releases the resources of the transport
+	 */
+	void close();
+
+}
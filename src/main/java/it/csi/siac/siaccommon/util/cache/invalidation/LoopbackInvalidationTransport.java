@@ -0,0 +1,37 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.invalidation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process transport, delivering the events synchronously to the subscribers sharing the same instance
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport {
+
+	/** The subscribers */
+	private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+
+	@Override
+	public void subscribe(InvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void publish(List<InvalidationEvent> events) {
+		for(InvalidationListener listener : listeners) {
+			for(InvalidationEvent event : events) {
+				listener.onInvalidation(event);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		listeners.clear();
+	}
+
+}
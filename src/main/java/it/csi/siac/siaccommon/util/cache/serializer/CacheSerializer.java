@@ -0,0 +1,29 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializer of the cached objects, for the caches storing them outside of the heap
+ *
+ * @param <T> the serialized type
+ */
+public interface CacheSerializer<T> {
+
+	/**
+	 * Serializes the object
+	 * @param object the object to serialize, not <code>null</code>
+	 * @return the serialized bytes
+	 */
+	byte[] serialize(T object);
+	/**
+	 * Deserializes the object
+	 * @param buffer the buffer holding the serialized bytes, between its position and its limit
+	 * @return the deserialized object
+	 */
+	T deserialize(ByteBuffer buffer);
+
+}
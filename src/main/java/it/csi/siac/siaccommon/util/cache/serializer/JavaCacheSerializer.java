@@ -0,0 +1,106 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Serializer based on the Java serialization
+ *
+ * @param <T> the serialized type
+ */
+public class JavaCacheSerializer<T extends Serializable> implements CacheSerializer<T> {
+
+	/** The serialized class */
+	private final Class<T> cls;
+
+	/**
+	 * Constructor
+	 * @param cls the serialized class
+	 */
+	public JavaCacheSerializer(Class<T> cls) {
+		this.cls = cls;
+	}
+
+	@Override
+	public byte[] serialize(T object) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = null;
+		try {
+			oos = new ObjectOutputStream(baos);
+			oos.writeObject(object);
+			oos.flush();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to serialize object of class " + object.getClass().getName(), e);
+		} finally {
+			IOUtils.closeQuietly(oos);
+		}
+		return baos.toByteArray();
+	}
+
+	@Override
+	public T deserialize(ByteBuffer buffer) {
+		ObjectInputStream ois = null;
+		try {
+			ois = new ObjectInputStream(new ByteBufferInputStream(buffer));
+			return cls.cast(ois.readObject());
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to deserialize object of class " + cls.getName(), e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unable to deserialize object of class " + cls.getName(), e);
+		} finally {
+			IOUtils.closeQuietly(ois);
+		}
+	}
+
+	/**
+	 * Input stream reading from a buffer, without copying it
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		/** The buffer */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Constructor
+		 * @param buffer the buffer
+		 */
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(len == 0) {
+				return 0;
+			}
+			if(!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+}
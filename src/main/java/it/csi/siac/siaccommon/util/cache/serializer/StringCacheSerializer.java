@@ -0,0 +1,36 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializer of strings, encoded in UTF-8
+ */
+public final class StringCacheSerializer implements CacheSerializer<String> {
+
+	/** The instance */
+	public static final StringCacheSerializer INSTANCE = new StringCacheSerializer();
+	/** The charset */
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	/** Private constructor for the singleton */
+	private StringCacheSerializer() {
+		// Singleton
+	}
+
+	@Override
+	public byte[] serialize(String object) {
+		return object.getBytes(CHARSET);
+	}
+
+	@Override
+	public String deserialize(ByteBuffer buffer) {
+		return CHARSET.decode(buffer).toString();
+	}
+
+}
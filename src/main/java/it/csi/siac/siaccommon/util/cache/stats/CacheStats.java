@@ -0,0 +1,166 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.stats;
+
+import java.io.Serializable;
+
+/**
+ * Immutable snapshot of the statistics of a cache.
+ * <p>
+ * The times are in nanoseconds. The load time percentiles are estimated from a histogram with four buckets per power of two,
+ * thus within a 25% error.
+ */
+public final class CacheStats implements Serializable {
+
+	/** For serialization purpose */
+	private static final long serialVersionUID = -6187231536483961276L;
+
+	private final long hitCount;
+	private final long missCount;
+	private final long loadSuccessCount;
+	private final long loadFailureCount;
+	private final long totalLoadTime;
+	private final long evictionCount;
+	private final long loadTimeMedian;
+	private final long loadTime95thPercentile;
+	private final long loadTime99thPercentile;
+	private final int size;
+
+	/**
+	 * Full constructor
+	 * @param hitCount the number of hits
+	 * @param missCount the number of misses
+	 * @param loadSuccessCount the number of successful loads
+	 * @param loadFailureCount the number of unsuccessful loads
+	 * @param totalLoadTime the total load time
+	 * @param evictionCount the number of evictions
+	 * @param loadTimeMedian the median load time
+	 * @param loadTime95thPercentile the 95th percentile of the load time
+	 * @param loadTime99thPercentile the 99th percentile of the load time
+	 * @param size the size of the cache
+	 */
+	public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime, long evictionCount,
+			long loadTimeMedian, long loadTime95thPercentile, long loadTime99thPercentile, int size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.totalLoadTime = totalLoadTime;
+		this.evictionCount = evictionCount;
+		this.loadTimeMedian = loadTimeMedian;
+		this.loadTime95thPercentile = loadTime95thPercentile;
+		this.loadTime99thPercentile = loadTime99thPercentile;
+		this.size = size;
+	}
+
+	/**
+	 * @return the number of lookups
+	 */
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/**
+	 * @return the ratio of the hits over the lookups (1 if no lookup was performed)
+	 */
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		return requestCount == 0L ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	/**
+	 * @return the number of loads
+	 */
+	public long getLoadCount() {
+		return loadSuccessCount + loadFailureCount;
+	}
+
+	/**
+	 * @return the average load time (0 if no load was performed)
+	 */
+	public double getAverageLoadPenalty() {
+		long loadCount = getLoadCount();
+		return loadCount == 0L ? 0.0 : (double) totalLoadTime / loadCount;
+	}
+
+	/**
+	 * @return the hitCount
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the missCount
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the loadSuccessCount
+	 */
+	public long getLoadSuccessCount() {
+		return loadSuccessCount;
+	}
+
+	/**
+	 * @return the loadFailureCount
+	 */
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	/**
+	 * @return the totalLoadTime
+	 */
+	public long getTotalLoadTime() {
+		return totalLoadTime;
+	}
+
+	/**
+	 * @return the evictionCount
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the loadTimeMedian
+	 */
+	public long getLoadTimeMedian() {
+		return loadTimeMedian;
+	}
+
+	/**
+	 * @return the loadTime95thPercentile
+	 */
+	public long getLoadTime95thPercentile() {
+		return loadTime95thPercentile;
+	}
+
+	/**
+	 * @return the loadTime99thPercentile
+	 */
+	public long getLoadTime99thPercentile() {
+		return loadTime99thPercentile;
+	}
+
+	/**
+	 * @return the size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats [hitCount=" + hitCount + ", missCount=" + missCount + ", loadSuccessCount=" + loadSuccessCount
+			+ ", loadFailureCount=" + loadFailureCount + ", totalLoadTime=" + totalLoadTime + ", evictionCount=" + evictionCount
+			+ ", loadTimeMedian=" + loadTimeMedian + ", loadTime95thPercentile=" + loadTime95thPercentile
+			+ ", loadTime99thPercentile=" + loadTime99thPercentile + ", size=" + size + "]";
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.stats;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import it.csi.siac.siaccommon.util.cache.InstrumentedCache;
+
+/**
+ * Utilities for the publication of the cache statistics via JMX.
+ * <p>
+ * The caches are registered on the platform MBean server with the name <code>it.csi.siac.siaccommon:type=CacheStats,name=&lt;name&gt;</code>
+ */
+public final class CacheStatsJmx {
+
+	/** The JMX domain */
+	private static final String DOMAIN = "it.csi.siac.siaccommon";
+
+	/** Private constructor to prevent accidental instantiation */
+	private CacheStatsJmx() {
+		// Prevent instantiation
+	}
+
+	/**
+	 * Registers the statistics of the cache, replacing any previous registration with the same name
+	 * @param name the name of the cache
+	 * @param cache the cache
+	 * @return the object name of the registered MBean
+	 */
+	public static ObjectName register(String name, InstrumentedCache<?, ?> cache) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = toObjectName(name);
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(new CacheStatsMXBeanImpl(cache), objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Unable to register the statistics of cache " + name, e);
+		}
+	}
+
+	/**
+	 * Unregisters the statistics of the cache, if registered
+	 * @param name the name of the cache
+	 */
+	public static void unregister(String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = toObjectName(name);
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Unable to unregister the statistics of cache " + name, e);
+		}
+	}
+
+	/**
+	 * Computes the object name of the cache
+	 * @param name the name of the cache
+	 * @return the object name
+	 * @throws JMException in case of an invalid name
+	 */
+	private static ObjectName toObjectName(String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=CacheStats,name=" + ObjectName.quote(name));
+	}
+
+	/**
+	 * MXBean reading the statistics of the cache
+	 */
+	private static final class CacheStatsMXBeanImpl implements CacheStatsMXBean {
+
+		/** The cache */
+		private final InstrumentedCache<?, ?> cache;
+
+		/**
+		 * Constructor
+		 * @param cache the cache
+		 */
+		CacheStatsMXBeanImpl(InstrumentedCache<?, ?> cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public long getHitCount() {
+			return cache.getStats().getHitCount();
+		}
+
+		@Override
+		public long getMissCount() {
+			return cache.getStats().getMissCount();
+		}
+
+		@Override
+		public double getHitRate() {
+			return cache.getStats().getHitRate();
+		}
+
+		@Override
+		public long getLoadSuccessCount() {
+			return cache.getStats().getLoadSuccessCount();
+		}
+
+		@Override
+		public long getLoadFailureCount() {
+			return cache.getStats().getLoadFailureCount();
+		}
+
+		@Override
+		public double getAverageLoadPenalty() {
+			return cache.getStats().getAverageLoadPenalty();
+		}
+
+		@Override
+		public long getLoadTimeMedian() {
+			return cache.getStats().getLoadTimeMedian();
+		}
+
+		@Override
+		public long getLoadTime95thPercentile() {
+			return cache.getStats().getLoadTime95thPercentile();
+		}
+
+		@Override
+		public long getLoadTime99thPercentile() {
+			return cache.getStats().getLoadTime99thPercentile();
+		}
+
+		@Override
+		public long getEvictionCount() {
+			return cache.getStats().getEvictionCount();
+		}
+
+		@Override
+		public int getSize() {
+			return cache.size();
+		}
+	}
+
+}
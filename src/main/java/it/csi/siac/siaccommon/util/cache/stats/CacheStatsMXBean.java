@@ -0,0 +1,57 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.stats;
+
+/**
+ * JMX view of the statistics of a cache. The times are in nanoseconds
+ */
+public interface CacheStatsMXBean {
+
+	/**
+	 * @return the number of hits
+	 */
+	long getHitCount();
+	/**
+	 * @return the number of misses
+	 */
+	long getMissCount();
+	/**
+	 * @return the ratio of the hits over the lookups
+	 */
+	double getHitRate();
+	/**
+	 * @return the number of successful loads
+	 */
+	long getLoadSuccessCount();
+	/**
+	 * @return the number of unsuccessful loads
+	 */
+	long getLoadFailureCount();
+	/**
+	 * @return the average load time
+	 */
+	double getAverageLoadPenalty();
+	/**
+	 * @return the median load time
+	 */
+	long getLoadTimeMedian();
+	/**
+	 * @return the 95th percentile of the load time
+	 */
+	long getLoadTime95thPercentile();
+	/**
+	 * @return the 99th percentile of the load time
+	 */
+	long getLoadTime99thPercentile();
+	/**
+	 * @return the number of evictions
+	 */
+	long getEvictionCount();
+	/**
+	 * @return the size of the cache
+	 */
+	int getSize();
+
+}
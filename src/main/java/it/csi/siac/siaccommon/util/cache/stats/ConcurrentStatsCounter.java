@@ -0,0 +1,135 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe recorder of the statistics, based on striped counters so as not to add contention to the cache
+ */
+public class ConcurrentStatsCounter implements StatsCounter {
+
+	/** The number of the histogram buckets: four per power of two, up to {@link Long#MAX_VALUE} */
+	private static final int BUCKETS = 248;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadSuccessCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	/** The histogram of the load times */
+	private final LongAdder[] loadTimeHistogram = new LongAdder[BUCKETS];
+
+	/**
+	 * Default constructor
+	 */
+	public ConcurrentStatsCounter() {
+		for(int i = 0; i < BUCKETS; i++) {
+			loadTimeHistogram[i] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void recordHits(int count) {
+		hitCount.add(count);
+	}
+
+	@Override
+	public void recordMisses(int count) {
+		missCount.add(count);
+	}
+
+	@Override
+	public void recordLoadSuccess(long loadTime) {
+		loadSuccessCount.increment();
+		recordLoadTime(loadTime);
+	}
+
+	@Override
+	public void recordLoadFailure(long loadTime) {
+		loadFailureCount.increment();
+		recordLoadTime(loadTime);
+	}
+
+	@Override
+	public void recordEviction() {
+		evictionCount.increment();
+	}
+
+	@Override
+	public CacheStats snapshot(int size) {
+		long[] histogram = new long[BUCKETS];
+		long total = 0L;
+		for(int i = 0; i < BUCKETS; i++) {
+			histogram[i] = loadTimeHistogram[i].sum();
+			total += histogram[i];
+		}
+		return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(), totalLoadTime.sum(), evictionCount.sum(),
+			percentile(histogram, total, 0.50), percentile(histogram, total, 0.95), percentile(histogram, total, 0.99), size);
+	}
+
+	/**
+	 * Records the load time
+	 * @param loadTime the load time
+	 */
+	private void recordLoadTime(long loadTime) {
+		long time = Math.max(loadTime, 0L);
+		totalLoadTime.add(time);
+		loadTimeHistogram[bucketOf(time)].increment();
+	}
+
+	/**
+	 * Computes the histogram bucket of the value: the values below 4 have a bucket each, the others are split
+	 * in four buckets per power of two
+	 * @param value the value, not negative
+	 * @return the bucket index
+	 */
+	private static int bucketOf(long value) {
+		if(value < 4L) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) ((value >>> (msb - 2)) & 3L);
+		return (msb - 1) * 4 + sub;
+	}
+
+	/**
+	 * Computes the highest value of the histogram bucket
+	 * @param bucket the bucket index
+	 * @return the highest value
+	 */
+	private static long highestValueOf(int bucket) {
+		if(bucket < 4) {
+			return bucket;
+		}
+		int msb = bucket / 4 + 1;
+		long lowest = (4L + bucket % 4) << (msb - 2);
+		return lowest + (1L << (msb - 2)) - 1L;
+	}
+
+	/**
+	 * Estimates the percentile of the histogram
+	 * @param histogram the histogram
+	 * @param total the number of values in the histogram
+	 * @param percentile the percentile, between 0 and 1
+	 * @return the estimated percentile (0 if the histogram is empty)
+	 */
+	private static long percentile(long[] histogram, long total, double percentile) {
+		if(total == 0L) {
+			return 0L;
+		}
+		long target = (long) Math.ceil(percentile * total);
+		long cumulative = 0L;
+		for(int i = 0; i < histogram.length; i++) {
+			cumulative += histogram[i];
+			if(cumulative >= target) {
+				return highestValueOf(i);
+			}
+		}
+		return highestValueOf(histogram.length - 1);
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.stats;
+
+/**
+ * Recorder ignoring all the statistics, used when the statistics are disabled
+ */
+public final class DisabledStatsCounter implements StatsCounter {
+
+	/** The instance */
+	public static final DisabledStatsCounter INSTANCE = new DisabledStatsCounter();
+
+	/** Private constructor for the singleton */
+	private DisabledStatsCounter() {
+		// Singleton
+	}
+
+	@Override
+	public void recordHits(int count) {
+		// Disabled
+	}
+
+	@Override
+	public void recordMisses(int count) {
+		// Disabled
+	}
+
+	@Override
+	public void recordLoadSuccess(long loadTime) {
+		// Disabled
+	}
+
+	@Override
+	public void recordLoadFailure(long loadTime) {
+		// Disabled
+	}
+
+	@Override
+	public void recordEviction() {
+		// Disabled
+	}
+
+	@Override
+	public CacheStats snapshot(int size) {
+		return new CacheStats(0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, size);
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.cache.stats;
+
+/**
+ * Recorder of the statistics of a cache
+ */
+public interface StatsCounter {
+
+	/**
+	 * Records the hits of the cache lookups
+	 * @param count the number of hits
+	 */
+	void recordHits(int count);
+	/**
+	 * Records the misses of the cache lookups
+	 * @param count the number of misses
+	 */
+	void recordMisses(int count);
+	/**
+	 * Records the successful load of a value
+	 * @param loadTime the load time, in nanoseconds
+	 */
+	void recordLoadSuccess(long loadTime);
+	/**
+	 * Records the unsuccessful load of a value, either by an exception or by a <code>null</code> value
+	 * @param loadTime the load time, in nanoseconds
+	 */
+	void recordLoadFailure(long loadTime);
+	/**
+	 * Records the eviction of an entry, either by the size policy or by the expiration
+	 */
+	void recordEviction();
+	/**
+	 * Obtains a snapshot of the statistics
+	 * @param size the current size of the cache
+	 * @return the statistics
+	 */
+	CacheStats snapshot(int size);
+
+}
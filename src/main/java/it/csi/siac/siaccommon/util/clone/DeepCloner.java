@@ -0,0 +1,642 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.clone;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+/**
+ * Deep cloner of object graphs, copying the fields of the objects through copy plans computed once per class.
+ * <p>
+ * The plan of a class depends on its kind:
+ * <ul>
+ *   <li>immutable classes (<code>String</code>, the boxed primitives, <code>BigDecimal</code>, <code>BigInteger</code>, enums,
+ *       <code>java.time</code>, ...) and the empty collections of {@link Collections} are shared, not copied;</li>
+ *   <li>arrays, and the collections and maps of <code>java.util</code>, are copied into a new instance of the same class,
+ *       presized, copying their elements;</li>
+ *   <li>the views of {@link Collections} (<code>unmodifiable*</code>, <code>synchronized*</code>, <code>singleton*</code>),
+ *       of {@link Arrays#asList(Object...)} and the <code>JAXBElement</code>s are recreated over the copy of their content,
+ *       so that a view of a copied collection is a view of its copy;</li>
+ *   <li>the other cloneable classes of the JDK (<code>Date</code>, <code>Calendar</code>, <code>XMLGregorianCalendar</code>, ...)
+ *       are copied by their <code>clone()</code> method;</li>
+ *   <li>the other classes are instantiated by their no-argument constructor, of any visibility, and their non-static,
+ *       non-transient fields are copied, up the hierarchy. Transient fields keep the value set by the constructor.</li>
+ * </ul>
+ * Shared references and cycles are preserved. If the graph contains a class that cannot be planned so (without a
+ * no-argument constructor, with inaccessible fields, extending a JDK class other than <code>Object</code>, with a custom
+ * serialized form, or another view of a JDK collection), the whole object is cloned as before, by serialization or through
+ * <code>XMLEncoder</code>: a copy of a part of the graph would not share its references with the rest of the copy.
+ * <br>
+ * Thread-safe.
+ */
+public final class DeepCloner {
+
+	private static final Set<Class<?>> IMMUTABLES = new HashSet<Class<?>>();
+	private static final Map<Class<?>, CopyPlan> COLLECTION_PLANS = new HashMap<Class<?>, CopyPlan>();
+	/** The factories of the views of {@link Collections}, per class of the view */
+	private static final Map<Class<?>, Method> VIEW_FACTORIES = new HashMap<Class<?>, Method>();
+	private static final CopyPlan SHARED = new CopyPlan() {
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			return source;
+		}
+	};
+
+	static {
+		Collections.addAll(IMMUTABLES, String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+				Long.class, Float.class, Double.class, BigDecimal.class, BigInteger.class, Class.class, Locale.class, UUID.class,
+				URI.class, URL.class, Currency.class, Pattern.class, File.class, QName.class);
+		COLLECTION_PLANS.put(Collections.emptyList().getClass(), SHARED);
+		COLLECTION_PLANS.put(Collections.emptySet().getClass(), SHARED);
+		COLLECTION_PLANS.put(Collections.emptyMap().getClass(), SHARED);
+		for(Class<?> cls : new Class<?>[] {ArrayList.class, LinkedList.class, Vector.class, ArrayDeque.class, HashSet.class,
+				LinkedHashSet.class, CopyOnWriteArrayList.class}) {
+			COLLECTION_PLANS.put(cls, new CollectionPlan(cls));
+		}
+		for(Class<?> cls : new Class<?>[] {HashMap.class, LinkedHashMap.class, Hashtable.class, ConcurrentHashMap.class, IdentityHashMap.class}) {
+			COLLECTION_PLANS.put(cls, new MapPlan(cls));
+		}
+		COLLECTION_PLANS.put(TreeSet.class, new CollectionPlan(TreeSet.class));
+		COLLECTION_PLANS.put(TreeMap.class, new MapPlan(TreeMap.class));
+		COLLECTION_PLANS.put(Collections.singletonList(null).getClass(), new SingletonPlan());
+		COLLECTION_PLANS.put(Collections.singleton(null).getClass(), new SingletonPlan());
+		COLLECTION_PLANS.put(Collections.singletonMap(null, null).getClass(), new SingletonPlan());
+		COLLECTION_PLANS.put(JAXBElement.class, new JAXBElementPlan());
+		for(String prefix : new String[] {"unmodifiable", "synchronized"}) {
+			addViewFactory(prefix + "Collection", Collection.class, new ArrayList<Object>());
+			addViewFactory(prefix + "List", List.class, new ArrayList<Object>());
+			addViewFactory(prefix + "List", List.class, new LinkedList<Object>());
+			addViewFactory(prefix + "Set", Set.class, new HashSet<Object>());
+			addViewFactory(prefix + "SortedSet", SortedSet.class, new TreeSet<Object>());
+			addViewFactory(prefix + "NavigableSet", NavigableSet.class, new TreeSet<Object>());
+			addViewFactory(prefix + "Map", Map.class, new HashMap<Object, Object>());
+			addViewFactory(prefix + "SortedMap", SortedMap.class, new TreeMap<Object, Object>());
+			addViewFactory(prefix + "NavigableMap", NavigableMap.class, new TreeMap<Object, Object>());
+		}
+	}
+
+	private static void addViewFactory(String name, Class<?> parameterType, Object sample) {
+		try {
+			Method factory = Collections.class.getMethod(name, parameterType);
+			Class<?> cls = factory.invoke(null, sample).getClass();
+			if(!VIEW_FACTORIES.containsKey(cls)) {
+				VIEW_FACTORIES.put(cls, factory);
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Metodo Collections." + name + " non disponibile", e);
+		}
+	}
+
+	/** The plans, per class */
+	private static final ClassValue<CopyPlan> PLANS = new ClassValue<CopyPlan>() {
+		@Override
+		protected CopyPlan computeValue(Class<?> type) {
+			return newPlan(type);
+		}
+	};
+
+	private DeepCloner() {
+		// Prevent instantiation
+	}
+
+	/**
+	 * Deep clones the object
+	 * @param <T> the type of the object
+	 * @param source the object
+	 * @return the clone of the object
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T clone(T source) {
+		if(source == null) {
+			return null;
+		}
+		try {
+			return (T) new Cloning().copy(source);
+		} catch (FallbackRequired e) {
+			return (T) cloneWhole(source);
+		}
+	}
+
+	/**
+	 * Clones the whole object by serialization, or else through <code>XMLEncoder</code>
+	 */
+	private static Object cloneWhole(Object source) {
+		if(source instanceof Serializable) {
+			return SerializationUtils.clone((Serializable) source);
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		XMLEncoder out = new XMLEncoder(bos);
+		out.writeObject(source);
+		out.close();
+		XMLDecoder in = new XMLDecoder(new ByteArrayInputStream(bos.toByteArray()));
+		Object copy = in.readObject();
+		in.close();
+		return copy;
+	}
+
+	private static CopyPlan newPlan(Class<?> cls) {
+		if(IMMUTABLES.contains(cls) || cls.isEnum() || (cls.getSuperclass() != null && cls.getSuperclass().isEnum())
+				|| (cls.getName().startsWith("java.time.") && Serializable.class.isAssignableFrom(cls))) {
+			return SHARED;
+		}
+		if(cls.isArray()) {
+			return cls.getComponentType().isPrimitive() ? new PrimitiveArrayPlan() : new ObjectArrayPlan(cls.getComponentType());
+		}
+		CopyPlan plan = COLLECTION_PLANS.get(cls);
+		if(plan != null) {
+			return plan;
+		}
+		Method viewFactory = VIEW_FACTORIES.get(cls);
+		if(viewFactory != null) {
+			try {
+				return new ViewPlan(cls, viewFactory);
+			} catch (RuntimeException e) {
+				// Inaccessible fields of java.util
+				return new FallbackPlan();
+			}
+		}
+		if(cls == Arrays.asList().getClass()) {
+			try {
+				return new ArrayViewPlan(cls);
+			} catch (RuntimeException e) {
+				return new FallbackPlan();
+			}
+		}
+		if(EnumSet.class.isAssignableFrom(cls)) {
+			// Elements are enums: the clone is deep
+			return new CloneMethodPlan(cls);
+		}
+		if(EnumMap.class == cls) {
+			return new MapPlan(EnumMap.class);
+		}
+		if(isJdkClass(cls)) {
+			return Cloneable.class.isAssignableFrom(cls) && hasPublicClone(cls) ? new CloneMethodPlan(cls) : new FallbackPlan();
+		}
+		if(hasJdkSuperclass(cls) || hasCustomSerialization(cls)) {
+			// The state of the JDK superclasses, and the custom serialized form, are not reachable through the fields
+			return new FallbackPlan();
+		}
+		try {
+			return new BeanPlan(cls);
+		} catch (RuntimeException e) {
+			// Inaccessible constructor or fields
+			return new FallbackPlan();
+		} catch (NoSuchMethodException e) {
+			return new FallbackPlan();
+		}
+	}
+
+	private static boolean isJdkClass(Class<?> cls) {
+		String name = cls.getName();
+		return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("com.sun.") || name.startsWith("jdk.");
+	}
+
+	private static boolean hasJdkSuperclass(Class<?> cls) {
+		for(Class<?> c = cls.getSuperclass(); c != null && c != Object.class; c = c.getSuperclass()) {
+			if(isJdkClass(c)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasCustomSerialization(Class<?> cls) {
+		if(!Serializable.class.isAssignableFrom(cls)) {
+			return false;
+		}
+		for(Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+			for(Method method : c.getDeclaredMethods()) {
+				String name = method.getName();
+				if(!Modifier.isStatic(method.getModifiers()) && ((method.getParameterTypes().length == 1
+						&& ("writeObject".equals(name) || "readObject".equals(name)))
+						|| (method.getParameterTypes().length == 0 && ("readResolve".equals(name) || "writeReplace".equals(name))))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasPublicClone(Class<?> cls) {
+		try {
+			return Modifier.isPublic(cls.getMethod("clone").getModifiers());
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static Field findField(Class<?> cls, String... names) {
+		for(Class<?> c = cls; c != null; c = c.getSuperclass()) {
+			for(String name : names) {
+				try {
+					Field field = c.getDeclaredField(name);
+					field.setAccessible(true);
+					return field;
+				} catch (NoSuchFieldException e) {
+					// Declared by a superclass, or with another name
+				}
+			}
+		}
+		throw new IllegalArgumentException("Campo " + Arrays.toString(names) + " non presente per " + cls.getName());
+	}
+
+	/**
+	 * Signals that the graph must be cloned as a whole by {@link DeepCloner#cloneWhole(Object)}
+	 */
+	private static final class FallbackRequired extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		static final FallbackRequired INSTANCE = new FallbackRequired();
+
+		private FallbackRequired() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * State of a single clone operation: the copies of the objects already visited
+	 */
+	static final class Cloning {
+		/** Marker of the views whose content is being copied, the view being created only after it */
+		private static final Object IN_PROGRESS = new Object();
+
+		private final Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+
+		Object copy(Object source) {
+			if(source == null) {
+				return null;
+			}
+			CopyPlan plan = PLANS.get(source.getClass());
+			if(plan == SHARED) {
+				return source;
+			}
+			Object copy = copies.get(source);
+			if(copy == IN_PROGRESS) {
+				// A view reachable from its own content
+				throw FallbackRequired.INSTANCE;
+			}
+			if(copy == null) {
+				copy = plan.copy(source, this);
+			}
+			return copy;
+		}
+
+		/**
+		 * Marks the view as being copied, before copying its content
+		 */
+		void registerInProgress(Object source) {
+			copies.put(source, IN_PROGRESS);
+		}
+
+		/**
+		 * Registers the copy before copying its content, so that cycles point to it
+		 */
+		void register(Object source, Object copy) {
+			copies.put(source, copy);
+		}
+	}
+
+	abstract static class CopyPlan {
+		abstract Object copy(Object source, Cloning cloning);
+	}
+
+	private static final class PrimitiveArrayPlan extends CopyPlan {
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			int length = Array.getLength(source);
+			Object copy = Array.newInstance(source.getClass().getComponentType(), length);
+			System.arraycopy(source, 0, copy, 0, length);
+			cloning.register(source, copy);
+			return copy;
+		}
+	}
+
+	private static final class ObjectArrayPlan extends CopyPlan {
+		private final Class<?> componentType;
+
+		ObjectArrayPlan(Class<?> componentType) {
+			this.componentType = componentType;
+		}
+
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			Object[] array = (Object[]) source;
+			Object[] copy = (Object[]) Array.newInstance(componentType, array.length);
+			cloning.register(source, copy);
+			for(int i = 0; i < array.length; i++) {
+				copy[i] = cloning.copy(array[i]);
+			}
+			return copy;
+		}
+	}
+
+	private static final class CollectionPlan extends CopyPlan {
+		private final Class<?> cls;
+
+		CollectionPlan(Class<?> cls) {
+			this.cls = cls;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			Collection<Object> collection = (Collection<Object>) source;
+			Collection<Object> copy;
+			if(cls == ArrayList.class) {
+				copy = new ArrayList<Object>(collection.size());
+			} else if(cls == HashSet.class) {
+				copy = new HashSet<Object>(Math.max((int) (collection.size() / .75f) + 1, 16));
+			} else if(cls == LinkedHashSet.class) {
+				copy = new LinkedHashSet<Object>(Math.max((int) (collection.size() / .75f) + 1, 16));
+			} else if(cls == TreeSet.class) {
+				copy = new TreeSet<Object>(((TreeSet) collection).comparator());
+			} else if(cls == CopyOnWriteArrayList.class) {
+				// Copied in bulk, rather than one element at a time
+				List<Object> elements = new ArrayList<Object>(collection.size());
+				CopyOnWriteArrayList<Object> list = new CopyOnWriteArrayList<Object>();
+				cloning.register(source, list);
+				for(Object element : collection) {
+					elements.add(cloning.copy(element));
+				}
+				list.addAll(elements);
+				return list;
+			} else {
+				copy = (Collection<Object>) newInstance(cls);
+			}
+			cloning.register(source, copy);
+			for(Object element : collection) {
+				copy.add(cloning.copy(element));
+			}
+			return copy;
+		}
+	}
+
+	private static final class MapPlan extends CopyPlan {
+		private final Class<?> cls;
+
+		MapPlan(Class<?> cls) {
+			this.cls = cls;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			Map<Object, Object> map = (Map<Object, Object>) source;
+			Map<Object, Object> copy;
+			if(cls == HashMap.class) {
+				copy = new HashMap<Object, Object>(Math.max((int) (map.size() / .75f) + 1, 16));
+			} else if(cls == LinkedHashMap.class) {
+				copy = new LinkedHashMap<Object, Object>(Math.max((int) (map.size() / .75f) + 1, 16));
+			} else if(cls == TreeMap.class) {
+				copy = new TreeMap<Object, Object>(((TreeMap) map).comparator());
+			} else if(cls == EnumMap.class) {
+				// The keys are enums: only the values are copied
+				copy = new EnumMap((EnumMap) map);
+			} else {
+				copy = (Map<Object, Object>) newInstance(cls);
+			}
+			cloning.register(source, copy);
+			for(Entry<Object, Object> entry : map.entrySet()) {
+				copy.put(cloning.copy(entry.getKey()), cloning.copy(entry.getValue()));
+			}
+			return copy;
+		}
+	}
+
+	private static Object newInstance(Class<?> cls) {
+		try {
+			return cls.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Impossibile istanziare " + cls.getName(), e);
+		}
+	}
+
+	private static final class CloneMethodPlan extends CopyPlan {
+		private final Method clone;
+
+		CloneMethodPlan(Class<?> cls) {
+			try {
+				this.clone = cls.getMethod("clone");
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("Metodo clone non presente per " + cls.getName(), e);
+			}
+		}
+
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			try {
+				Object copy = clone.invoke(source);
+				cloning.register(source, copy);
+				return copy;
+			} catch (Exception e) {
+				throw new IllegalStateException("Clonazione di " + source.getClass().getName() + " fallita", e);
+			}
+		}
+	}
+
+	/**
+	 * Plan of the views of {@link Collections}: the view is recreated by its factory over the copy of the viewed collection
+	 */
+	private static final class ViewPlan extends CopyPlan {
+		private final Method factory;
+		private final Field viewed;
+		/** The lock of the synchronized views, or <code>null</code> */
+		private final Field mutex;
+
+		ViewPlan(Class<?> cls, Method factory) {
+			this.factory = factory;
+			this.viewed = findField(cls, "c", "m");
+			this.mutex = factory.getName().startsWith("synchronized") ? findField(cls, "mutex") : null;
+		}
+
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			try {
+				if(mutex != null && mutex.get(source) != source) {
+					// Locking on another object, which the factory cannot set
+					throw FallbackRequired.INSTANCE;
+				}
+				cloning.registerInProgress(source);
+				Object copy = factory.invoke(null, cloning.copy(viewed.get(source)));
+				cloning.register(source, copy);
+				return copy;
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Clonazione di " + source.getClass().getName() + " fallita", e);
+			}
+		}
+	}
+
+	/**
+	 * Plan of the lists of {@link Arrays#asList(Object...)}: the list is recreated over the copy of the array
+	 */
+	private static final class ArrayViewPlan extends CopyPlan {
+		private final Field array;
+
+		ArrayViewPlan(Class<?> cls) {
+			this.array = findField(cls, "a");
+		}
+
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			try {
+				cloning.registerInProgress(source);
+				Object copy = Arrays.asList((Object[]) cloning.copy(array.get(source)));
+				cloning.register(source, copy);
+				return copy;
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Clonazione di " + source.getClass().getName() + " fallita", e);
+			}
+		}
+	}
+
+	/**
+	 * Plan of the immutable singletons of {@link Collections}, recreated over the copy of their element
+	 */
+	private static final class SingletonPlan extends CopyPlan {
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			cloning.registerInProgress(source);
+			Object copy;
+			if(source instanceof List) {
+				copy = Collections.singletonList(cloning.copy(((List<?>) source).get(0)));
+			} else if(source instanceof Set) {
+				Iterator<?> iterator = ((Set<?>) source).iterator();
+				copy = Collections.singleton(cloning.copy(iterator.next()));
+			} else {
+				Entry<?, ?> entry = ((Map<?, ?>) source).entrySet().iterator().next();
+				copy = Collections.singletonMap(cloning.copy(entry.getKey()), cloning.copy(entry.getValue()));
+			}
+			cloning.register(source, copy);
+			return copy;
+		}
+	}
+
+	/**
+	 * Plan of the <code>JAXBElement</code>s, copying their value
+	 */
+	private static final class JAXBElementPlan extends CopyPlan {
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			JAXBElement<Object> element = (JAXBElement<Object>) source;
+			JAXBElement<Object> copy = new JAXBElement(element.getName(), element.getDeclaredType(), element.getScope(), null);
+			cloning.register(source, copy);
+			copy.setValue(cloning.copy(element.getValue()));
+			copy.setNil(element.isNil());
+			return copy;
+		}
+	}
+
+	/**
+	 * Plan of the classes that cannot be copied field by field: the whole graph is cloned by {@link DeepCloner#cloneWhole(Object)}
+	 */
+	private static final class FallbackPlan extends CopyPlan {
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			throw FallbackRequired.INSTANCE;
+		}
+	}
+
+	/**
+	 * Plan of the beans: instantiation by the no-argument constructor, and copy of the fields
+	 */
+	private static final class BeanPlan extends CopyPlan {
+		private final Constructor<?> constructor;
+		private final Field[] fields;
+		/** Whether the field can be assigned without copying, being primitive or of an immutable final class */
+		private final boolean[] direct;
+
+		BeanPlan(Class<?> cls) throws NoSuchMethodException {
+			if(Modifier.isAbstract(cls.getModifiers()) || cls.isInterface()) {
+				throw new IllegalArgumentException("Classe non istanziabile: " + cls.getName());
+			}
+			this.constructor = cls.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			List<Field> list = new ArrayList<Field>();
+			for(Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+				for(Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if(!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+						field.setAccessible(true);
+						list.add(field);
+					}
+				}
+			}
+			this.fields = list.toArray(new Field[list.size()]);
+			this.direct = new boolean[fields.length];
+			for(int i = 0; i < fields.length; i++) {
+				Class<?> type = fields[i].getType();
+				direct[i] = type.isPrimitive() || (IMMUTABLES.contains(type) && Modifier.isFinal(type.getModifiers()));
+			}
+		}
+
+		@Override
+		Object copy(Object source, Cloning cloning) {
+			try {
+				Object copy = constructor.newInstance();
+				cloning.register(source, copy);
+				for(int i = 0; i < fields.length; i++) {
+					Object value = fields[i].get(source);
+					fields[i].set(copy, direct[i] ? value : cloning.copy(value));
+				}
+				return copy;
+			} catch (FallbackRequired e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException("Clonazione di " + source.getClass().getName() + " fallita", e);
+			}
+		}
+	}
+
+}
@@ -4,32 +4,207 @@
 */
 package it.csi.siac.siaccommon.util.file;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
-
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import it.csi.siac.siaccommon.util.collections.CollectionUtil;
 import it.csi.siac.siaccommon.util.collections.Function;
 import it.csi.siac.siaccommon.util.collections.Predicate;
 import it.csi.siac.siaccommon.util.fileparser.CsvFileParser;
 
-public final class CsvExportUtil {
-		
-	private StringBuilder sb = new StringBuilder();
-	private static final String SEP = CsvFileParser.CSV_DELIMITER;
+/**
+ * Export of lines in CSV format, encoded in UTF-8.
+ * <p>
+ * The lines are encoded as soon as they are added, through a reusable buffer, either in memory (to be obtained via {@link #export()})
+ * or directly to an {@link OutputStream} or a {@link WritableByteChannel}, optionally compressed: in the latter case the export
+ * is never held in memory as a whole, and must be completed via {@link #close()}.
+ */
+public final class CsvExportUtil implements Closeable {
+
+	private static final char SEP_CHAR = CsvFileParser.CSV_DELIMITER.charAt(0);
+	private static final int BUFFER_SIZE = 8192;
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+	/** Beyond 2^53 the doubles are not exact integers */
+	private static final double MAX_EXACT_DOUBLE = 9007199254740992d;
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	private final ByteArrayOutputStream memory;
+	private final OutputStream out;
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	private char[] chars = new char[256];
+	private CharBuffer charBuffer = CharBuffer.wrap(chars);
+	private int charCount;
+	private int fieldCount;
+	private final TimeZone timeZone = TimeZone.getDefault();
+	private boolean empty = true;
+	private int flushThreshold;
+	private int linesSinceFlush;
+
+	/**
+	 * Export in memory
+	 */
+	public CsvExportUtil() {
+		this.memory = new ByteArrayOutputStream(BUFFER_SIZE);
+		this.out = memory;
+		this.channel = null;
+	}
+
+	/**
+	 * Streaming export to the output stream
+	 * @param out the stream, closed by {@link #close()}
+	 */
+	public CsvExportUtil(OutputStream out) {
+		if(out == null) {
+			throw new NullPointerException("Null output stream");
+		}
+		this.memory = null;
+		this.out = out;
+		this.channel = null;
+	}
+
+	/**
+	 * Streaming export to the channel
+	 * @param channel the channel, closed by {@link #close()}
+	 */
+	public CsvExportUtil(WritableByteChannel channel) {
+		if(channel == null) {
+			throw new NullPointerException("Null channel");
+		}
+		this.memory = null;
+		this.out = null;
+		this.channel = channel;
+	}
+
+	/**
+	 * Streaming export to the output stream, compressed in gzip format
+	 * @param out the stream, closed by {@link #close()}
+	 * @return the export
+	 * @throws IOException in case of an error in writing the gzip header
+	 */
+	public static CsvExportUtil gzip(OutputStream out) throws IOException {
+		return new CsvExportUtil(new GZIPOutputStream(out, BUFFER_SIZE));
+	}
+
+	/**
+	 * Streaming export to the output stream, as the only entry of a zip archive
+	 * @param out the stream, closed by {@link #close()}
+	 * @param entryName the name of the CSV file in the archive
+	 * @return the export
+	 * @throws IOException in case of an error in writing the entry header
+	 */
+	public static CsvExportUtil zip(OutputStream out, String entryName) throws IOException {
+		ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+		zip.putNextEntry(new ZipEntry(entryName));
+		return new CsvExportUtil(zip);
+	}
 
+	/**
+	 * Sets the number of lines after which the encoded lines are flushed to the destination, e.g. to send the first lines
+	 * of a large export to the client in the meantime. By default the lines are written only when the buffer is full
+	 * @param flushThreshold the number of lines; 0 to disable
+	 */
+	public void setFlushThreshold(int flushThreshold) {
+		this.flushThreshold = flushThreshold;
+	}
+
+	/**
+	 * Appends the content of the stream as it is, ending it with a newline if missing
+	 * @param fileInputStream the stream to append
+	 * @throws IOException in case of an error in reading the stream or writing the content
+	 */
 	public void appendTo(InputStream fileInputStream) throws IOException {
-		for (String line : IOUtils.readLines(fileInputStream)) {
-			sb.append(line).append("\n");
+		drain();
+		ReadableByteChannel source = fileInputStream instanceof FileInputStream
+			? ((FileInputStream) fileInputStream).getChannel()
+			: Channels.newChannel(fileInputStream);
+		long transferred = 0L;
+		byte last = '\n';
+		if(source instanceof FileChannel && channel != null) {
+			FileChannel file = (FileChannel) source;
+			long start = file.position();
+			long size = file.size();
+			for(long position = start; position < size; ) {
+				position += file.transferTo(position, size - position, channel);
+			}
+			transferred = size - start;
+			if(transferred > 0L) {
+				ByteBuffer lastByte = ByteBuffer.allocate(1);
+				file.read(lastByte, size - 1);
+				last = lastByte.get(0);
+			}
+			file.position(size);
+		} else {
+			int read;
+			while((read = source.read(bytes)) >= 0) {
+				if(read > 0) {
+					transferred += read;
+					last = bytes.get(bytes.position() - 1);
+				}
+				if(!bytes.hasRemaining()) {
+					drain();
+				}
+			}
+		}
+		if(transferred > 0L) {
+			empty = false;
+			if(last != '\n') {
+				bytes.put((byte) '\n');
+			}
 		}
 	}
 
 	public void addLine(String...line) {
-		sb.append(formatCsvLine(line));
+		if (line == null || line.length == 0) {
+			return;
+		}
+		for (String field : line) {
+			addField(field);
+		}
+		endLine();
+	}
+
+	/**
+	 * Adds a line of values of any type, formatted as by the corresponding {@link #addField} method
+	 * (<code>toString()</code> for the types not handled explicitly)
+	 * @param line the values of the line
+	 */
+	public void addLine(Object...line) {
+		if (line == null || line.length == 0) {
+			return;
+		}
+		for (Object field : line) {
+			addObjectField(field);
+		}
+		endLine();
 	}
 
 	public <S> void addLines(List<S> list, Function<S, String[]> toCsvLineMapper) {
@@ -43,48 +218,345 @@ public final class CsvExportUtil {
 	}
 
 	public void setHeader(String...header) throws IllegalAccessException {
-		if (sb.length() > 0) {
+		if (!empty || fieldCount > 0) {
 			throw new IllegalAccessException("Header can be set with empty content");
 		}
-		
-		sb.append(formatCsvLine(header));
+
+		addLine(header);
+	}
+
+	/**
+	 * Adds a field to the current line, quoting it if it contains a delimiter, a quote, an apostrophe or a newline,
+	 * or if it starts or ends with a whitespace. <code>null</code> and empty values are written as an empty quoted field
+	 * @param value the value
+	 */
+	public void addField(String value) {
+		separate();
+		if (value == null || value.isEmpty()) {
+			ensureCapacity(2);
+			chars[charCount++] = '"';
+			chars[charCount++] = '"';
+			return;
+		}
+		int length = value.length();
+		char first = value.charAt(0);
+		boolean quote = first == ' ' || first == '\t' || value.charAt(length - 1) == ' ';
+		int quotes = 0;
+		// Single scan, deciding the quoting and counting the quotes to escape
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				quotes++;
+			} else if (c == SEP_CHAR || c == '\'' || c == '\n' || c == '\r') {
+				quote = true;
+			}
+		}
+		if (!quote && quotes == 0) {
+			ensureCapacity(length);
+			value.getChars(0, length, chars, charCount);
+			charCount += length;
+			return;
+		}
+		ensureCapacity(length + quotes + 2);
+		chars[charCount++] = '"';
+		if (quotes == 0) {
+			value.getChars(0, length, chars, charCount);
+			charCount += length;
+		} else {
+			for (int i = 0; i < length; i++) {
+				char c = value.charAt(i);
+				if (c == '"') {
+					chars[charCount++] = '"';
+				}
+				chars[charCount++] = c;
+			}
+		}
+		chars[charCount++] = '"';
+	}
+
+	public void addField(long value) {
+		separate();
+		appendLong(value);
 	}
-	
-	private String formatCsvLine(String...fields) {
-		
-		if (fields == null || fields.length == 0) {
-			return "";
+
+	public void addField(boolean value) {
+		addField(value ? "true" : "false");
+	}
+
+	/**
+	 * Adds a decimal field to the current line, rounded half-up to the given scale, with the comma as decimal separator
+	 * @param value the value
+	 * @param scale the number of decimal digits, from 0 to 15
+	 */
+	public void addField(double value, int scale) {
+		if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("Scala non supportata: " + scale);
 		}
-		
-		StringBuilder sb = new StringBuilder();
+		double scaled = Math.abs(value) * POWERS_OF_TEN[scale];
+		if (Double.isNaN(value) || Double.isInfinite(value) || scaled >= MAX_EXACT_DOUBLE || isNearTie(scaled)) {
+			addRoundedField(value, scale);
+			return;
+		}
+		separate();
+		long unscaled = (long) (scaled + 0.5);
+		if (value < 0 && unscaled != 0L) {
+			unscaled = -unscaled;
+		}
+		if (scale == 0) {
+			appendLong(unscaled);
+		} else {
+			appendDecimal(unscaled, scale);
+		}
+	}
+
+	/**
+	 * Checks whether the scaled value is so close to a half that rounding the binary double may differ from rounding
+	 * its decimal representation, as done by {@link BigDecimal#valueOf(double)}: e.g. 1.005 is slightly below 1.005 in binary
+	 */
+	private static boolean isNearTie(double scaled) {
+		double fraction = scaled - Math.floor(scaled);
+		return Math.abs(fraction - 0.5) <= Math.max(1e-9, 8 * Math.ulp(scaled));
+	}
 
-		for (String s : fields) {
-			
-			if (s == null) {
-				sb.append("\"\"").append(SEP);
-				continue;
+	private void addRoundedField(double value, int scale) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			addField(String.valueOf(value));
+			return;
+		}
+		addField(BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP));
+	}
+
+	/**
+	 * Adds a decimal field to the current line, in plain notation with the comma as decimal separator
+	 * (as parsed by {@link it.csi.siac.siaccommon.util.number.NumberUtil#decimalToBigDecimal(String)})
+	 * @param value the value
+	 */
+	public void addField(BigDecimal value) {
+		if (value == null) {
+			addField((String) null);
+			return;
+		}
+		separate();
+		BigInteger unscaled = value.unscaledValue();
+		if (unscaled.bitLength() >= 63) {
+			String plain = value.toPlainString().replace('.', ',');
+			ensureCapacity(plain.length());
+			plain.getChars(0, plain.length(), chars, charCount);
+			charCount += plain.length();
+			return;
+		}
+		int scale = value.scale();
+		if (scale <= 0) {
+			appendLong(unscaled.longValue());
+			for (int i = scale; i < 0; i++) {
+				ensureCapacity(1);
+				chars[charCount++] = '0';
 			}
-						
-			if (StringUtils.isEmpty(s)) {
-				sb.append("\"\"").append(SEP);
-				continue;
+			return;
+		}
+		appendDecimal(unscaled.longValue(), scale);
+	}
+
+	/**
+	 * Adds a date field to the current line, in the default format of {@link it.csi.siac.siaccommon.util.date.DateUtil} (dd/MM/yyyy)
+	 * @param value the value
+	 */
+	public void addField(Date value) {
+		if (value == null) {
+			addField((String) null);
+			return;
+		}
+		separate();
+		// Civil date from the day number, as the Calendar would compute it without allocating (proleptic Gregorian calendar)
+		long millis = value.getTime();
+		long z = Math.floorDiv(millis + timeZone.getOffset(millis), MILLIS_PER_DAY) + 719468L;
+		long era = Math.floorDiv(z, 146097L);
+		long dayOfEra = z - era * 146097L;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460L + dayOfEra / 36524L - dayOfEra / 146096L) / 365L;
+		long dayOfYear = dayOfEra - (365L * yearOfEra + yearOfEra / 4L - yearOfEra / 100L);
+		long monthIndex = (5L * dayOfYear + 2L) / 153L;
+		int day = (int) (dayOfYear - (153L * monthIndex + 2L) / 5L + 1L);
+		int month = (int) (monthIndex < 10L ? monthIndex + 3L : monthIndex - 9L);
+		long year = yearOfEra + era * 400L + (month <= 2 ? 1L : 0L);
+		ensureCapacity(6);
+		appendTwoDigits(day);
+		chars[charCount++] = '/';
+		appendTwoDigits(month);
+		chars[charCount++] = '/';
+		appendDigits(year, 4);
+	}
+
+	/**
+	 * Ends the current line, started by the calls to the <code>addField</code> methods
+	 */
+	public void endLine() {
+		ensureCapacity(1);
+		chars[charCount++] = '\n';
+		write();
+		fieldCount = 0;
+		charCount = 0;
+	}
+
+	private void addObjectField(Object field) {
+		if (field instanceof BigDecimal) {
+			addField((BigDecimal) field);
+		} else if (field instanceof Long || field instanceof Integer || field instanceof Short || field instanceof Byte) {
+			addField(((Number) field).longValue());
+		} else if (field instanceof Date) {
+			addField((Date) field);
+		} else if (field instanceof Boolean) {
+			addField(((Boolean) field).booleanValue());
+		} else {
+			addField(field != null ? field.toString() : null);
+		}
+	}
+
+	private void separate() {
+		if (fieldCount++ > 0) {
+			ensureCapacity(1);
+			chars[charCount++] = SEP_CHAR;
+		}
+	}
+
+	private void ensureCapacity(int length) {
+		if (chars.length - charCount < length) {
+			chars = Arrays.copyOf(chars, Math.max(charCount + length, chars.length * 2));
+			charBuffer = CharBuffer.wrap(chars);
+		}
+	}
+
+	private void appendLong(long value) {
+		ensureCapacity(20);
+		if (value == Long.MIN_VALUE) {
+			String min = String.valueOf(Long.MIN_VALUE);
+			min.getChars(0, min.length(), chars, charCount);
+			charCount += min.length();
+			return;
+		}
+		long abs = value;
+		if (value < 0) {
+			chars[charCount++] = '-';
+			abs = -value;
+		}
+		appendDigits(abs, 1);
+	}
+
+	/**
+	 * Appends the digits of the non-negative value, left-padded with zeros to the minimum number of digits
+	 */
+	private void appendDigits(long value, int minDigits) {
+		int digits = 1;
+		for (long v = value; v >= 10; v /= 10) {
+			digits++;
+		}
+		digits = Math.max(digits, minDigits);
+		ensureCapacity(digits);
+		long v = value;
+		for (int i = charCount + digits - 1; i >= charCount; i--) {
+			chars[i] = (char) ('0' + v % 10);
+			v /= 10;
+		}
+		charCount += digits;
+	}
+
+	private void appendDecimal(long unscaled, int scale) {
+		ensureCapacity(scale + 22);
+		long abs = unscaled;
+		if (unscaled < 0) {
+			chars[charCount++] = '-';
+			abs = -unscaled;
+		}
+		appendDigits(abs, scale + 1);
+		// Moves the decimal digits right, making room for the separator
+		System.arraycopy(chars, charCount - scale, chars, charCount - scale + 1, scale);
+		chars[charCount - scale] = ',';
+		charCount++;
+	}
+
+	private void appendTwoDigits(int value) {
+		chars[charCount++] = (char) ('0' + value / 10);
+		chars[charCount++] = (char) ('0' + value % 10);
+	}
+
+	/**
+	 * Encodes the current line in the buffer, writing the buffer to the destination when full
+	 */
+	private void write() {
+		charBuffer.limit(charCount);
+		charBuffer.position(0);
+		encoder.reset();
+		try {
+			while(encoder.encode(charBuffer, bytes, true) == CoderResult.OVERFLOW) {
+				drain();
 			}
-			
-			if (s.contains("\"") || s.contains("'") || s.contains(SEP) || s.startsWith("\n") || s.startsWith(" ") || s.endsWith(" ") || s.startsWith("\t")  || s.startsWith("\t")) {
-				sb.append(String.format("\"%s\"", s.replace("\"", "\"\""))).append(SEP);
-				continue;
+			empty = false;
+			if(flushThreshold > 0 && ++linesSinceFlush >= flushThreshold) {
+				flush();
 			}
-			
-			sb.append(s).append(SEP);
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di scrittura dell'export CSV", e);
 		}
-		
-		sb.deleteCharAt(sb.length()-1).append("\n");
-		
-		return sb.toString();
 	}
 
+	/**
+	 * Writes the buffer to the destination
+	 */
+	private void drain() throws IOException {
+		bytes.flip();
+		if(out != null) {
+			out.write(bytes.array(), bytes.arrayOffset(), bytes.remaining());
+		} else {
+			while(bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Writes the encoded lines to the destination, flushing it
+	 * @throws IOException in case of an error in writing the lines
+	 */
+	public void flush() throws IOException {
+		drain();
+		linesSinceFlush = 0;
+		if(out != null) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Obtains the export in memory
+	 * @return the content of the export
+	 * @throws UnsupportedEncodingException never, kept for compatibility
+	 * @throws IllegalStateException for a streaming export, whose content has already been written to the destination
+	 */
 	public byte[] export() throws UnsupportedEncodingException {
-		return sb.toString().getBytes("utf-8");
+		if(memory == null) {
+			throw new IllegalStateException("Export in streaming: il contenuto e' stato scritto sulla destinazione");
+		}
+		try {
+			drain();
+		} catch (IOException e) {
+			// Not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return memory.toByteArray();
+	}
+
+	/**
+	 * Completes the export, writing the remaining lines and closing the destination
+	 * (which, for a compressed export, writes the trailer of the archive)
+	 * @throws IOException in case of an error in writing the lines
+	 */
+	@Override
+	public void close() throws IOException {
+		drain();
+		if(out != null) {
+			out.close();
+		} else {
+			channel.close();
+		}
 	}
 
 }
@@ -0,0 +1,388 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+
+import it.csi.siac.siaccommon.util.collections.Predicate;
+
+/**
+ * Import of a delimited file in batches, collecting the errors of the lines and resumable after a crash.
+ * <p>
+ * The lines are mapped by a {@link RecordMapper} or a {@link LineMapper}: the lines whose mapping fails are recorded in
+ * an error journal, bounded to {@link #setMaxErrors(int)} entries, and the import goes on. The mapped objects are delivered
+ * to the consumer in batches of {@link #setBatchSize(int)} elements (e.g. for JDBC batch inserts); a <code>null</code>
+ * mapped object is discarded.
+ * <br>
+ * After each batch is consumed, a checkpoint with the offset of the next line is written to disk: if the import is
+ * interrupted, the next run resumes from the line following the last batch consumed, so that each line is delivered
+ * at least once. The entries of the error journal are appended to a journal file next to the checkpoint (with the
+ * <code>.errors</code> suffix) before each checkpoint, and are reloaded on resume: the journal of a resumed import holds
+ * the errors of the previous runs as well, bounded to {@link #setMaxErrors(int)} entries in total. The checkpoint and the
+ * journal file are deleted when the import completes.
+ * <br>
+ * The file is read from a memory mapping, as by the {@link MappedDelimitedTextFileParser}.
+ */
+public class BatchImportPipeline<T>
+{
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int DEFAULT_MAX_ERRORS = 1000;
+
+	private static final String OFFSET = "offset";
+	private static final String LINE_NUMBER = "lineNumber";
+	private static final String IMPORTED_COUNT = "importedCount";
+	private static final String ERROR_COUNT = "errorCount";
+	private static final String FILE_LENGTH = "fileLength";
+	private static final String FILE_LAST_MODIFIED = "fileLastModified";
+	private static final String JOURNAL_LENGTH = "journalLength";
+
+	private final File file;
+	private final char delimiter;
+	private final Charset charset;
+	private final File checkpointFile;
+	private final File journalFile;
+	private RecordMapper<T> recordMapper;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int maxErrors = DEFAULT_MAX_ERRORS;
+	private int headerLines;
+
+	private final List<ImportError> errors = new ArrayList<ImportError>();
+	private long lineNumber;
+	private long importedCount;
+	private long errorCount;
+	private boolean resumed;
+	/** The number of entries of the journal already written in the journal file */
+	private int journaledErrors;
+	/** The length of the journal file */
+	private long journalLength;
+
+	/**
+	 * @param file the file to import
+	 * @param delimiter the delimiter of the fields
+	 * @param checkpointFile the file of the checkpoint, or <code>null</code> not to write checkpoints nor the journal file
+	 */
+	public BatchImportPipeline(File file, char delimiter, File checkpointFile) {
+		this(file, delimiter, StandardCharsets.UTF_8, checkpointFile);
+	}
+
+	public BatchImportPipeline(File file, char delimiter, Charset charset, File checkpointFile) {
+		MappedRecordReader.toDelimiterByte(delimiter, charset);
+		this.file = file;
+		this.delimiter = delimiter;
+		this.charset = charset;
+		this.checkpointFile = checkpointFile;
+		this.journalFile = checkpointFile != null ? new File(checkpointFile.getPath() + ".errors") : null;
+	}
+
+	public void setRecordMapper(RecordMapper<T> recordMapper) {
+		this.recordMapper = recordMapper;
+	}
+
+	public void setLineMapper(LineMapper<T> lineMapper) {
+		this.recordMapper = MappedDelimitedTextFileParser.toRecordMapper(lineMapper);
+	}
+
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Dimensione del blocco non valida: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of errors recorded in the journal; the errors beyond it are only counted
+	 */
+	public void setMaxErrors(int maxErrors) {
+		if (maxErrors < 0) {
+			throw new IllegalArgumentException("Numero massimo di errori non valido: " + maxErrors);
+		}
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Sets the number of lines skipped at the beginning of the file
+	 */
+	public void setHeaderLines(int headerLines) {
+		this.headerLines = headerLines;
+	}
+
+	/**
+	 * Imports the file, from the checkpoint if present
+	 * @param consumer the consumer of the batches of mapped objects
+	 */
+	public void run(Predicate<List<T>> consumer) {
+		// Checked upfront: a missing mapper would otherwise be journaled as an error on every line
+		if (recordMapper == null) {
+			throw new IllegalStateException("Mapper dei record non impostato");
+		}
+		if (maxErrors < 0) {
+			throw new IllegalStateException("Numero massimo di errori non valido: " + maxErrors);
+		}
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			long length = raf.length();
+			long lastModified = file.lastModified();
+			long offset = readCheckpoint(length, lastModified);
+			ByteDelimitedRecord record = new ByteDelimitedRecord(charset);
+			MappedRecordReader reader = new MappedRecordReader(raf.getChannel(), offset, length,
+					MappedRecordReader.toDelimiterByte(delimiter, charset), record, MappedRecordReader.DEFAULT_WINDOW_SIZE);
+			if (!resumed) {
+				for (int i = 0; i < headerLines && reader.next(); i++) {
+					lineNumber++;
+				}
+			}
+			List<T> batch = new ArrayList<T>(batchSize);
+			while (reader.next()) {
+				lineNumber++;
+				mapRecord(record, batch);
+				if (batch.size() == batchSize) {
+					deliver(consumer, batch, reader.getOffset(), length, lastModified);
+					batch = new ArrayList<T>(batchSize);
+				}
+			}
+			if (!batch.isEmpty()) {
+				deliver(consumer, batch, reader.getOffset(), length, lastModified);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura alla riga " + lineNumber, e);
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+		if (checkpointFile != null && checkpointFile.exists() && !checkpointFile.delete()) {
+			throw new IllegalStateException("Impossibile cancellare il checkpoint " + checkpointFile);
+		}
+		deleteJournal();
+	}
+
+	private void mapRecord(ByteDelimitedRecord record, List<T> batch) {
+		try {
+			T obj = recordMapper.mapRecord(record);
+			if (obj != null) {
+				batch.add(obj);
+			}
+		} catch (RuntimeException e) {
+			errorCount++;
+			if (errors.size() < maxErrors) {
+				errors.add(new ImportError(lineNumber, record.getLine(), e.getMessage() != null ? e.getMessage() : e.toString()));
+			}
+		}
+	}
+
+	private void deliver(Predicate<List<T>> consumer, List<T> batch, long offset, long length, long lastModified) throws IOException {
+		consumer.apply(Collections.unmodifiableList(batch));
+		importedCount += batch.size();
+		// The journal is written first, so that a checkpoint never refers to entries not yet written
+		appendJournal();
+		writeCheckpoint(offset, length, lastModified);
+	}
+
+	/**
+	 * Reads the checkpoint, if present, restoring the counters and the journal. The checkpoint must match the length and the
+	 * modification time of the file, so that a different file is never resumed
+	 * @return the offset from which to resume
+	 */
+	private long readCheckpoint(long length, long lastModified) throws IOException {
+		lineNumber = 0L;
+		importedCount = 0L;
+		errorCount = 0L;
+		resumed = false;
+		errors.clear();
+		journaledErrors = 0;
+		journalLength = 0L;
+		if (checkpointFile == null || !checkpointFile.isFile()) {
+			// Journal of an import completed or never checkpointed
+			deleteJournal();
+			return 0L;
+		}
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(checkpointFile);
+		try {
+			properties.load(in);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		long offset = Long.parseLong(properties.getProperty(OFFSET));
+		if (Long.parseLong(properties.getProperty(FILE_LENGTH)) != length || offset > length
+				|| !Long.toString(lastModified).equals(properties.getProperty(FILE_LAST_MODIFIED))) {
+			throw new IllegalStateException("Il checkpoint " + checkpointFile + " non corrisponde al file " + file);
+		}
+		lineNumber = Long.parseLong(properties.getProperty(LINE_NUMBER));
+		importedCount = Long.parseLong(properties.getProperty(IMPORTED_COUNT));
+		errorCount = Long.parseLong(properties.getProperty(ERROR_COUNT));
+		readJournal(Long.parseLong(properties.getProperty(JOURNAL_LENGTH, "0")));
+		resumed = true;
+		return offset;
+	}
+
+	/**
+	 * Reads the journal file up to the length recorded by the checkpoint, truncating the entries written after it
+	 */
+	private void readJournal(long length) throws IOException {
+		if (length == 0L) {
+			deleteJournal();
+			return;
+		}
+		if (!journalFile.isFile() || journalFile.length() < length) {
+			throw new IllegalStateException("Il file degli errori " + journalFile + " non corrisponde al checkpoint " + checkpointFile);
+		}
+		RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+		try {
+			while (true) {
+				long errorLineNumber;
+				try {
+					errorLineNumber = in.readLong();
+				} catch (EOFException e) {
+					break;
+				}
+				errors.add(new ImportError(errorLineNumber, readString(in), readString(in)));
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		journaledErrors = errors.size();
+		journalLength = length;
+	}
+
+	/**
+	 * Appends the entries of the journal not yet written to the journal file
+	 */
+	private void appendJournal() throws IOException {
+		if (journalFile == null || journaledErrors == errors.size()) {
+			return;
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+		try {
+			for (ImportError error : errors.subList(journaledErrors, errors.size())) {
+				out.writeLong(error.getLineNumber());
+				writeString(out, error.getLine());
+				writeString(out, error.getMessage());
+			}
+			out.close();
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+		journaledErrors = errors.size();
+		journalLength = journalFile.length();
+	}
+
+	private void deleteJournal() {
+		if (journalFile != null && journalFile.exists() && !journalFile.delete()) {
+			throw new IllegalStateException("Impossibile cancellare il file degli errori " + journalFile);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0) {
+			throw new IOException("Lunghezza non valida nel file degli errori: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the checkpoint on a temporary file, then moved on the checkpoint, so that a crash never leaves it partially written
+	 */
+	private void writeCheckpoint(long offset, long length, long lastModified) throws IOException {
+		if (checkpointFile == null) {
+			return;
+		}
+		Properties properties = new Properties();
+		properties.setProperty(OFFSET, Long.toString(offset));
+		properties.setProperty(LINE_NUMBER, Long.toString(lineNumber));
+		properties.setProperty(IMPORTED_COUNT, Long.toString(importedCount));
+		properties.setProperty(ERROR_COUNT, Long.toString(errorCount));
+		properties.setProperty(FILE_LENGTH, Long.toString(length));
+		properties.setProperty(FILE_LAST_MODIFIED, Long.toString(lastModified));
+		properties.setProperty(JOURNAL_LENGTH, Long.toString(journalLength));
+		File temp = new File(checkpointFile.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			properties.store(out, file.getPath());
+			out.close();
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+		Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return the number of the last line read
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return the number of objects delivered to the consumer, including the runs before the checkpoint
+	 */
+	public long getImportedCount() {
+		return importedCount;
+	}
+
+	/**
+	 * @return the number of lines whose mapping failed, including the runs before the checkpoint
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * @return the errors recorded in the journal, including the runs before the checkpoint
+	 */
+	public List<ImportError> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * @return whether the last run resumed from a checkpoint
+	 */
+	public boolean isResumed() {
+		return resumed;
+	}
+
+}
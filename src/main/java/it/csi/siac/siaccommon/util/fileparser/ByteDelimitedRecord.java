@@ -0,0 +1,209 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Record whose fields are views over the bytes of the file, decoded only when read
+ */
+final class ByteDelimitedRecord extends DelimitedRecord {
+
+	private final Charset charset;
+	private final boolean singleByteCharset;
+	private final CharsetDecoder decoder;
+
+	private ByteBuffer buffer;
+	private int fieldCount;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private FieldView[] views = new FieldView[0];
+	private boolean ascii;
+	private byte[] bytes = new byte[64];
+
+	ByteDelimitedRecord(Charset charset) {
+		this.charset = charset;
+		this.singleByteCharset = StandardCharsets.ISO_8859_1.equals(charset);
+		this.decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Starts a new record over the buffer
+	 */
+	void reset(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.fieldCount = 0;
+	}
+
+	/**
+	 * Adds a field, given its bounds in the buffer
+	 */
+	void addField(int start, int end) {
+		if(fieldCount == starts.length) {
+			starts = Arrays.copyOf(starts, fieldCount * 2);
+			ends = Arrays.copyOf(ends, fieldCount * 2);
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		fieldCount++;
+	}
+
+	/**
+	 * Marks whether all the bytes of the record are ASCII, so that they can be read as chars without decoding
+	 */
+	void setAscii(boolean ascii) {
+		this.ascii = ascii;
+	}
+
+	ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	boolean isAscii() {
+		return ascii;
+	}
+
+	/**
+	 * Decodes the whole record, delimiters included, e.g. to report it in case of errors
+	 */
+	String getLine() {
+		return fieldCount == 0 ? "" : decode(starts[0], ends[fieldCount - 1]);
+	}
+
+	/**
+	 * @return the start of the field in the buffer
+	 */
+	int getStart(int index) {
+		checkIndex(index);
+		return starts[index];
+	}
+
+	/**
+	 * @return the end of the field in the buffer
+	 */
+	int getEnd(int index) {
+		checkIndex(index);
+		return ends[index];
+	}
+
+	@Override
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	@Override
+	public CharSequence getField(int index) {
+		checkIndex(index);
+		if(index >= views.length) {
+			int length = views.length;
+			views = Arrays.copyOf(views, Math.max(fieldCount, length * 2));
+			for(int i = length; i < views.length; i++) {
+				views[i] = new FieldView();
+			}
+		}
+		FieldView view = views[index];
+		view.bind(starts[index], ends[index]);
+		return view;
+	}
+
+	@Override
+	public String getString(int index) {
+		checkIndex(index);
+		return decode(starts[index], ends[index]);
+	}
+
+	@Override
+	public boolean isEmpty(int index) {
+		checkIndex(index);
+		return starts[index] == ends[index];
+	}
+
+	private String decode(int start, int end) {
+		int length = end - start;
+		if(bytes.length < length) {
+			bytes = new byte[Math.max(length, bytes.length * 2)];
+		}
+		ByteBuffer source = buffer.duplicate();
+		source.position(start);
+		source.get(bytes, 0, length);
+		return new String(bytes, 0, length, ascii || singleByteCharset ? StandardCharsets.ISO_8859_1 : charset);
+	}
+
+	/**
+	 * View of a field. The bytes of ASCII records and of single-byte charsets are read as chars directly;
+	 * otherwise the field is decoded in a reusable buffer on first access
+	 */
+	private final class FieldView implements CharSequence {
+
+		private int start;
+		private int end;
+		private CharBuffer chars = CharBuffer.allocate(16);
+		private boolean decoded;
+
+		void bind(int start, int end) {
+			this.start = start;
+			this.end = end;
+			this.decoded = false;
+		}
+
+		private boolean direct() {
+			return ascii || singleByteCharset;
+		}
+
+		private CharBuffer decodedChars() {
+			if(!decoded) {
+				ByteBuffer source = buffer.duplicate();
+				source.limit(end);
+				source.position(start);
+				int capacity = (int) Math.ceil((end - start) * (double) decoder.maxCharsPerByte());
+				if(chars.capacity() < capacity) {
+					chars = CharBuffer.allocate(capacity);
+				}
+				chars.clear();
+				decoder.reset();
+				decoder.decode(source, chars, true);
+				decoder.flush(chars);
+				chars.flip();
+				decoded = true;
+			}
+			return chars;
+		}
+
+		@Override
+		public int length() {
+			return direct() ? end - start : decodedChars().remaining();
+		}
+
+		@Override
+		public char charAt(int index) {
+			if(direct()) {
+				if(index < 0 || index >= end - start) {
+					throw new IndexOutOfBoundsException("Indice " + index + " non valido");
+				}
+				return (char) (buffer.get(start + index) & 0xFF);
+			}
+			return decodedChars().charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().substring(from, to);
+		}
+
+		@Override
+		public String toString() {
+			return direct() ? decode(start, end) : decodedChars().toString();
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.IOException;
+
+/**
+ * Reader of the records of a file in a reusable {@link ByteDelimitedRecord}
+ */
+interface ByteRecordReader {
+
+	boolean hasNext() throws IOException;
+
+	/**
+	 * Reads the next record in the {@link ByteDelimitedRecord}
+	 * @return whether a record was read
+	 */
+	boolean next() throws IOException;
+
+}
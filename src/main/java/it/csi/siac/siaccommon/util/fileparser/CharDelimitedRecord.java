@@ -0,0 +1,110 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.util.Arrays;
+
+/**
+ * Record whose fields are views over a reusable buffer of already decoded chars
+ */
+final class CharDelimitedRecord extends DelimitedRecord {
+
+	private char[] chars;
+	private int fieldCount;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private FieldView[] views = new FieldView[0];
+
+	/**
+	 * Starts a new record over the chars
+	 */
+	void reset(char[] chars) {
+		this.chars = chars;
+		this.fieldCount = 0;
+	}
+
+	/**
+	 * Sets the chars of the record, after the buffer has grown
+	 */
+	void setChars(char[] chars) {
+		this.chars = chars;
+	}
+
+	/**
+	 * Adds a field, given its bounds in the chars
+	 */
+	void addField(int start, int end) {
+		if(fieldCount == starts.length) {
+			starts = Arrays.copyOf(starts, fieldCount * 2);
+			ends = Arrays.copyOf(ends, fieldCount * 2);
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		fieldCount++;
+	}
+
+	@Override
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	@Override
+	public CharSequence getField(int index) {
+		checkIndex(index);
+		if(index >= views.length) {
+			int length = views.length;
+			views = Arrays.copyOf(views, Math.max(fieldCount, length * 2));
+			for(int i = length; i < views.length; i++) {
+				views[i] = new FieldView();
+			}
+		}
+		FieldView view = views[index];
+		view.start = starts[index];
+		view.end = ends[index];
+		return view;
+	}
+
+	@Override
+	public String getString(int index) {
+		checkIndex(index);
+		return new String(chars, starts[index], ends[index] - starts[index]);
+	}
+
+	@Override
+	public boolean isEmpty(int index) {
+		checkIndex(index);
+		return starts[index] == ends[index];
+	}
+
+	private final class FieldView implements CharSequence {
+
+		private int start;
+		private int end;
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if(index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException("Indice " + index + " non valido");
+			}
+			return chars[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().substring(from, to);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, start, end - start);
+		}
+	}
+
+}
@@ -7,6 +7,7 @@ package it.csi.siac.siaccommon.util.fileparser;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 
 public class CsvFileParser<T> extends DelimitedTextFileParser<T>
 {
@@ -16,8 +17,16 @@ public class CsvFileParser<T> extends DelimitedTextFileParser<T>
 		super(in, CSV_DELIMITER);
 	}
 
+	public CsvFileParser(InputStream in, Charset charset) {
+		super(in, CSV_DELIMITER, charset);
+	}
+
 	public CsvFileParser(File file) throws FileNotFoundException {
 		super(file, CSV_DELIMITER);
 	}
+
+	public CsvFileParser(File file, Charset charset) throws FileNotFoundException {
+		super(file, CSV_DELIMITER, charset);
+	}
 }
 
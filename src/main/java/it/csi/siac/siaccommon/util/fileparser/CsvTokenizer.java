@@ -0,0 +1,140 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Tokenizer of CSV records as per RFC 4180, in a single pass over the chars.
+ * <p>
+ * Fields may be enclosed in double quotes, in which case they can contain delimiters, newlines and double quotes
+ * escaped by doubling them. Records can end with either <code>\n</code> or <code>\r\n</code>.
+ * The input is read leniently: a double quote in an unquoted field, or chars after the closing quote, are kept as they are.
+ * <br>
+ * The unescaped fields are collected in a reusable buffer, exposed by a {@link CharDelimitedRecord}.
+ */
+final class CsvTokenizer {
+
+	private static final int FIELD_START = 0;
+	private static final int UNQUOTED = 1;
+	private static final int QUOTED = 2;
+	private static final int QUOTE_IN_QUOTED = 3;
+
+	private final Reader reader;
+	private final char delimiter;
+	private final CharDelimitedRecord record = new CharDelimitedRecord();
+	private final char[] input = new char[8192];
+	private int inputPosition;
+	private int inputLimit;
+	private char[] chars = new char[256];
+	private int length;
+	private int lineNumber;
+	private int recordLineNumber;
+
+	CsvTokenizer(Reader reader, char delimiter) {
+		if(delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+			throw new IllegalArgumentException("Delimitatore non valido: " + delimiter);
+		}
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+
+	boolean hasNext() throws IOException {
+		return inputPosition < inputLimit || fill();
+	}
+
+	/**
+	 * @return the number of the line on which the last record read starts
+	 */
+	int getRecordLineNumber() {
+		return recordLineNumber;
+	}
+
+	/**
+	 * Reads the next record
+	 * @return the record, valid until the next record is read
+	 */
+	CharDelimitedRecord next() throws IOException {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		lineNumber++;
+		recordLineNumber = lineNumber;
+		record.reset(chars);
+		length = 0;
+		int fieldStart = 0;
+		int state = FIELD_START;
+		while(true) {
+			if(inputPosition == inputLimit && !fill()) {
+				if(state == QUOTED) {
+					throw new IllegalStateException("Campo tra virgolette non terminato nel record alla riga " + recordLineNumber);
+				}
+				endField(fieldStart, state);
+				return record;
+			}
+			char c = input[inputPosition++];
+			if(state == QUOTED) {
+				if(c == '"') {
+					state = QUOTE_IN_QUOTED;
+				} else {
+					if(c == '\n') {
+						lineNumber++;
+					}
+					append(c);
+				}
+			} else if(state == FIELD_START && c == '"') {
+				state = QUOTED;
+			} else if(state == QUOTE_IN_QUOTED && c == '"') {
+				// Escaped double quote
+				append(c);
+				state = QUOTED;
+			} else if(c == delimiter) {
+				endField(fieldStart, state);
+				fieldStart = length;
+				state = FIELD_START;
+			} else if(c == '\n') {
+				endField(fieldStart, state);
+				return record;
+			} else if(state != QUOTE_IN_QUOTED || c != '\r') {
+				append(c);
+				state = UNQUOTED;
+			}
+		}
+	}
+
+	private void endField(int fieldStart, int state) {
+		int fieldEnd = length;
+		if(state == UNQUOTED && fieldEnd > fieldStart && chars[fieldEnd - 1] == '\r') {
+			fieldEnd--;
+		}
+		record.addField(fieldStart, fieldEnd);
+	}
+
+	private void append(char c) {
+		if(length == chars.length) {
+			chars = Arrays.copyOf(chars, length * 2);
+			record.setChars(chars);
+		}
+		chars[length++] = c;
+	}
+
+	private boolean fill() throws IOException {
+		inputPosition = 0;
+		inputLimit = 0;
+		int read;
+		do {
+			read = reader.read(input);
+		} while(read == 0);
+		if(read < 0) {
+			return false;
+		}
+		inputLimit = read;
+		return true;
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+/**
+ * Record of a delimited file, whose fields are exposed as views decoded only when read.
+ * <p>
+ * The record and the views are reused for the next record, so that no allocation is performed
+ * for the fields not converted to a <code>String</code>.
+ */
+public abstract class DelimitedRecord {
+
+	DelimitedRecord() {
+		// Implemented in the package only
+	}
+
+	public abstract int getFieldCount();
+
+	/**
+	 * Obtains a view of the field, valid until the next record is read
+	 * @param index the index of the field
+	 * @return the view of the field
+	 */
+	public abstract CharSequence getField(int index);
+
+	public abstract String getString(int index);
+
+	public boolean isEmpty(int index) {
+		return getField(index).length() == 0;
+	}
+
+	/**
+	 * Parses the field as an integer, without converting it to a <code>String</code>
+	 * @param index the index of the field
+	 * @return the value of the field
+	 * @throws NumberFormatException if the field is not an integer
+	 */
+	public int getInt(int index) {
+		long value = getLong(index);
+		if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Valore fuori dai limiti: " + getString(index));
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Parses the field as a long, without converting it to a <code>String</code>
+	 * @param index the index of the field
+	 * @return the value of the field
+	 * @throws NumberFormatException if the field is not a long
+	 */
+	public long getLong(int index) {
+		CharSequence field = getField(index);
+		int length = field.length();
+		boolean negative = length > 0 && field.charAt(0) == '-';
+		int i = negative || (length > 0 && field.charAt(0) == '+') ? 1 : 0;
+		if(i == length || length - i > 19) {
+			throw new NumberFormatException("Valore non numerico: " + field);
+		}
+		long value = 0L;
+		for(; i < length; i++) {
+			int digit = field.charAt(i) - '0';
+			if(digit < 0 || digit > 9) {
+				throw new NumberFormatException("Valore non numerico: " + field);
+			}
+			value = value * 10 - digit;
+			if(value > 0L) {
+				throw new NumberFormatException("Valore fuori dai limiti: " + field);
+			}
+		}
+		if(!negative) {
+			if(value == Long.MIN_VALUE) {
+				throw new NumberFormatException("Valore fuori dai limiti: " + field);
+			}
+			value = -value;
+		}
+		return value;
+	}
+
+	/**
+	 * Converts all the fields, as expected by a {@link LineMapper}
+	 * @return the fields
+	 */
+	public String[] toArray() {
+		String[] values = new String[getFieldCount()];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = getString(i);
+		}
+		return values;
+	}
+
+	void checkIndex(int index) {
+		if(index < 0 || index >= getFieldCount()) {
+			throw new IndexOutOfBoundsException("Campo " + index + " non presente: il record ha " + getFieldCount() + " campi");
+		}
+	}
+
+}
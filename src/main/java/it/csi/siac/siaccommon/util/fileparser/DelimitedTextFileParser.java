@@ -8,6 +8,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -22,10 +23,19 @@ public class DelimitedTextFileParser<T> extends TextFileParser<T>
 		this.delimiter = delimiter;
 	}
 
+	public DelimitedTextFileParser(InputStream in, String delimiter, Charset charset) {
+		super(in, charset);
+		this.delimiter = delimiter;
+	}
+
 	public DelimitedTextFileParser(File file, String delimiter) throws FileNotFoundException {
 		this(new FileInputStream(file), delimiter);
 	}
 
+	public DelimitedTextFileParser(File file, String delimiter, Charset charset) throws FileNotFoundException {
+		this(new FileInputStream(file), delimiter, charset);
+	}
+
 	@Override
 	protected String[] parseLine(String line) {
 		return StringUtils.splitPreserveAllTokens(line, delimiter);
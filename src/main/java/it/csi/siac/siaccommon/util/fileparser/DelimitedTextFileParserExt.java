@@ -9,13 +9,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import org.apache.commons.beanutils.PropertyUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang3.StringUtils;
 
@@ -27,21 +25,47 @@ public class DelimitedTextFileParserExt<T>
 {
 	private LineIterator lineIterator;
 	private String delimiter;
+	private String datePattern = PropertyBinder.DEFAULT_DATE_PATTERN;
 	protected Iterator<T> iterator;
 
 	public DelimitedTextFileParserExt(InputStream in, String delimiter) {
-		this.lineIterator = IOUtils.lineIterator(new InputStreamReader(in));
+		this(in, delimiter, Charset.defaultCharset());
+	}
+
+	/**
+	 * @param in the stream
+	 * @param delimiter the delimiter of the fields
+	 * @param charset the charset of the stream, unless it starts with a byte order mark
+	 */
+	public DelimitedTextFileParserExt(InputStream in, String delimiter, Charset charset) {
+		this.lineIterator = TextReaders.lineIterator(in, charset);
 		this.delimiter = delimiter;
 	}
 
 	public DelimitedTextFileParserExt(byte[] fileBytes, String delimiter) {
 		this(new ByteArrayInputStream(fileBytes), delimiter);
 	}
+
+	public DelimitedTextFileParserExt(byte[] fileBytes, String delimiter, Charset charset) {
+		this(new ByteArrayInputStream(fileBytes), delimiter, charset);
+	}
 	
 	public DelimitedTextFileParserExt(File file, String delimiter) throws FileNotFoundException {
 		this(new FileInputStream(file), delimiter);
 	}
 
+	public DelimitedTextFileParserExt(File file, String delimiter, Charset charset) throws FileNotFoundException {
+		this(new FileInputStream(file), delimiter, charset);
+	}
+
+	/**
+	 * Sets the pattern of the dates for the property mapping strategy. To be called before {@link #setPropertyMappingStrategy(Class, String...)}
+	 * @param datePattern the pattern, as per {@link it.csi.siac.siaccommon.util.date.DateUtil#parseDate(String, String)}
+	 */
+	public void setDatePattern(String datePattern) {
+		this.datePattern = datePattern;
+	}
+
 	public void setPropertyMappingStrategy(Class<T> cls, String... properties) {
 		iterator = new PropertyMapperIterator(cls, properties);
 	}
@@ -143,31 +167,29 @@ public class DelimitedTextFileParserExt<T>
 	
 	class PropertyMapperIterator extends BaseMapperIterator {
 		
-		private Class<T> cls;
-		private String[] properties;
+		private PropertyBinder<T> binder;
+		private String bindingError;
 		
 		public PropertyMapperIterator(Class<T> cls, String... properties) {
-			this.cls = cls;
-			this.properties = properties;
+			try {
+				// The property paths are resolved once, rather than on every line
+				this.binder = new PropertyBinder<T>(cls, datePattern, properties);
+			}
+			catch (IllegalArgumentException e) {
+				this.bindingError = e.getMessage();
+			}
 		}
 
 		@Override
 		protected T mapValues(String[] values) {
-			if (values.length != properties.length) {
-				errors.add(String.format("Numero campi non coerente: %d", values.length));
+			if (bindingError != null) {
+				errors.add(bindingError);
 				
 				return null;
 			}
 
 			try {
-				T obj = cls.newInstance();
-
-				for (int i = 0; i < properties.length; i++) {
-					if (StringUtils.isNotEmpty(properties[i]))
-						PropertyUtils.setNestedProperty(obj, properties[i], values[i]);
-				}
-
-				return obj;
+				return binder.mapValues(values);
 			}
 			catch (Exception e) {
 				errors.add(e.getMessage());
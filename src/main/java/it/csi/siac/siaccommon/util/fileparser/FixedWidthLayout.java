@@ -0,0 +1,139 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Layout (tracciato record) of a fixed-width file, for the {@link FixedWidthTextFileParser}.
+ * <p>
+ * The layout is made of one or more record types, each chosen by the prefix of the line (e.g. the <code>"10"</code>
+ * of the detail records of a flow), and made of fields given by offset, length and type. A record type without
+ * discriminator matches any line.
+ * The offsets are 0-based and counted in bytes, as the positions of the tracciati of the single-byte charsets.
+ * <pre>
+ * FixedWidthLayout layout = new FixedWidthLayout();
+ * layout.addRecordType("10")
+ * 	.addField("abi", 2, 5, FieldType.NUMERIC)
+ * 	.addField("descrizione", 7, 30);
+ * layout.addRecordType("EF");
+ * </pre>
+ */
+public class FixedWidthLayout
+{
+	private final List<RecordType> recordTypes = new ArrayList<RecordType>();
+
+	/**
+	 * Adds a record type, chosen by the prefix of the lines. The record types are matched in the order they are added
+	 * @param discriminator the prefix of the lines of the record type, or <code>null</code> to match any line
+	 * @return the record type, to which the fields are added
+	 */
+	public RecordType addRecordType(String discriminator) {
+		for (RecordType recordType : recordTypes) {
+			if (StringUtils.equals(recordType.discriminator, discriminator)) {
+				throw new IllegalArgumentException("Tipo record gia' presente: " + discriminator);
+			}
+		}
+		RecordType recordType = new RecordType(StringUtils.defaultIfEmpty(discriminator, null));
+		recordTypes.add(recordType);
+		return recordType;
+	}
+
+	public RecordType getRecordType(String discriminator) {
+		for (RecordType recordType : recordTypes) {
+			if (StringUtils.equals(recordType.discriminator, discriminator)) {
+				return recordType;
+			}
+		}
+		throw new IllegalArgumentException("Tipo record non presente: " + discriminator);
+	}
+
+	public List<RecordType> getRecordTypes() {
+		return Collections.unmodifiableList(recordTypes);
+	}
+
+	public enum FieldType {
+		/** Left aligned and padded with blanks: the trailing blanks are trimmed */
+		ALPHANUMERIC,
+		/** Right aligned and padded with zeros or blanks: the leading and trailing blanks are trimmed, the zeros are kept */
+		NUMERIC
+	}
+
+	public static class RecordType {
+
+		private final String discriminator;
+		private final List<Field> fields = new ArrayList<Field>();
+
+		RecordType(String discriminator) {
+			this.discriminator = discriminator;
+		}
+
+		public RecordType addField(String name, int offset, int length) {
+			return addField(name, offset, length, FieldType.ALPHANUMERIC);
+		}
+
+		public RecordType addField(String name, int offset, int length, FieldType type) {
+			if (offset < 0 || length <= 0) {
+				throw new IllegalArgumentException("Posizione non valida per il campo " + name + ": offset " + offset + ", lunghezza " + length);
+			}
+			if (type == null) {
+				throw new IllegalArgumentException("Tipo non specificato per il campo " + name);
+			}
+			if (name != null && getFieldIndex(name) >= 0) {
+				throw new IllegalArgumentException("Campo gia' presente: " + name);
+			}
+			fields.add(new Field(name, offset, length, type));
+			return this;
+		}
+
+		public String getDiscriminator() {
+			return discriminator;
+		}
+
+		public int getFieldCount() {
+			return fields.size();
+		}
+
+		/**
+		 * @param name the name of the field
+		 * @return the index of the field in the records, or -1 if not present
+		 */
+		public int getFieldIndex(String name) {
+			for (int i = 0; i < fields.size(); i++) {
+				if (name.equals(fields.get(i).name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		public String getFieldName(int index) {
+			return fields.get(index).name;
+		}
+
+		Field getField(int index) {
+			return fields.get(index);
+		}
+	}
+
+	static final class Field {
+		final String name;
+		final int offset;
+		final int length;
+		final FieldType type;
+
+		Field(String name, int offset, int length, FieldType type) {
+			this.name = name;
+			this.offset = offset;
+			this.length = length;
+			this.type = type;
+		}
+	}
+
+}
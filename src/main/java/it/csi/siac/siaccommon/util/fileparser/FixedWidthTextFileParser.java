@@ -0,0 +1,263 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import it.csi.siac.siaccommon.util.collections.Predicate;
+import it.csi.siac.siaccommon.util.fileparser.FixedWidthLayout.Field;
+import it.csi.siac.siaccommon.util.fileparser.FixedWidthLayout.FieldType;
+import it.csi.siac.siaccommon.util.fileparser.FixedWidthLayout.RecordType;
+
+/**
+ * Parser of fixed-width files (tracciati record), driven by a {@link FixedWidthLayout}.
+ * <p>
+ * The lines are read as bytes, either from a stream or from a memory mapping of the file, in constant memory;
+ * the record type is chosen by comparing the prefix of the line with the discriminators, and the fields are sliced
+ * from the line without copying it. A {@link LineMapper} or a {@link RecordMapper} is set for each record type,
+ * receiving the fields in the order of the layout; the records of the types without a mapper are skipped by {@link #parse(Predicate)}.
+ * <br>
+ * Lines shorter than the layout are accepted: the fields past the end of the line are empty.
+ * The charset must encode the blank and the newline as in ASCII (e.g. UTF-8, ISO-8859-1, windows-1252).
+ */
+public class FixedWidthTextFileParser<T> implements Closeable
+{
+	private final Closeable source;
+	private final ByteRecordReader reader;
+	private final ByteDelimitedRecord line;
+	private final ByteDelimitedRecord record;
+	private final List<RecordType> recordTypes;
+	private final byte[][] discriminators;
+	private final int[][] offsets;
+	private final int[][] lengths;
+	private final FieldType[][] types;
+	private final RecordMapper<T>[] recordMappers;
+	private Integer lineNumber = 0;
+	private int recordTypeIndex = -1;
+
+	public FixedWidthTextFileParser(InputStream in, FixedWidthLayout layout) {
+		this(in, layout, StandardCharsets.UTF_8);
+	}
+
+	public FixedWidthTextFileParser(InputStream in, FixedWidthLayout layout, Charset charset) {
+		this(in, null, layout, charset);
+	}
+
+	/**
+	 * Creates a parser reading a memory mapping of the file
+	 */
+	public FixedWidthTextFileParser(File file, FixedWidthLayout layout) throws IOException {
+		this(file, layout, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates a parser reading a memory mapping of the file
+	 */
+	public FixedWidthTextFileParser(File file, FixedWidthLayout layout, Charset charset) throws IOException {
+		this(null, new RandomAccessFile(file, "r"), layout, charset);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private FixedWidthTextFileParser(InputStream in, RandomAccessFile file, FixedWidthLayout layout, Charset charset) {
+		checkCharset(charset);
+		this.line = new ByteDelimitedRecord(charset);
+		this.record = new ByteDelimitedRecord(charset);
+		if (file != null) {
+			try {
+				this.reader = new MappedRecordReader(file.getChannel(), 0L, file.length(), MappedRecordReader.NO_DELIMITER, line, MappedRecordReader.DEFAULT_WINDOW_SIZE);
+			} catch (IOException e) {
+				IOUtils.closeQuietly(file);
+				throw new IllegalStateException("Errore di lettura della lunghezza del file", e);
+			}
+			this.source = file;
+		} else {
+			this.reader = new StreamLineReader(in, line);
+			this.source = in;
+		}
+
+		// The layout is compiled in arrays, read for each line
+		this.recordTypes = layout.getRecordTypes();
+		if (recordTypes.isEmpty()) {
+			throw new IllegalArgumentException("Nessun tipo record nel tracciato");
+		}
+		int size = recordTypes.size();
+		this.discriminators = new byte[size][];
+		this.offsets = new int[size][];
+		this.lengths = new int[size][];
+		this.types = new FieldType[size][];
+		this.recordMappers = new RecordMapper[size];
+		for (int i = 0; i < size; i++) {
+			RecordType type = recordTypes.get(i);
+			discriminators[i] = type.getDiscriminator() != null ? type.getDiscriminator().getBytes(charset) : new byte[0];
+			int fieldCount = type.getFieldCount();
+			offsets[i] = new int[fieldCount];
+			lengths[i] = new int[fieldCount];
+			types[i] = new FieldType[fieldCount];
+			for (int j = 0; j < fieldCount; j++) {
+				Field field = type.getField(j);
+				offsets[i][j] = field.offset;
+				lengths[i][j] = field.length;
+				types[i][j] = field.type;
+			}
+		}
+	}
+
+	private static void checkCharset(Charset charset) {
+		byte[] encoded = " \n".getBytes(charset);
+		if (encoded.length != 2 || encoded[0] != ' ' || encoded[1] != '\n') {
+			throw new IllegalArgumentException("Charset non supportato: " + charset);
+		}
+	}
+
+	/**
+	 * Sets the mapper of all the record types
+	 */
+	public void setLineMapper(LineMapper<T> lineMapper) {
+		setRecordMapper(MappedDelimitedTextFileParser.toRecordMapper(lineMapper));
+	}
+
+	public void setLineMapper(String discriminator, LineMapper<T> lineMapper) {
+		setRecordMapper(discriminator, MappedDelimitedTextFileParser.toRecordMapper(lineMapper));
+	}
+
+	/**
+	 * Sets the mapper of all the record types
+	 */
+	public void setRecordMapper(RecordMapper<T> recordMapper) {
+		for (int i = 0; i < recordMappers.length; i++) {
+			recordMappers[i] = recordMapper;
+		}
+	}
+
+	public void setRecordMapper(String discriminator, RecordMapper<T> recordMapper) {
+		for (int i = 0; i < recordMappers.length; i++) {
+			if (StringUtils.equals(recordTypes.get(i).getDiscriminator(), StringUtils.defaultIfEmpty(discriminator, null))) {
+				recordMappers[i] = recordMapper;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Tipo record non presente: " + discriminator);
+	}
+
+	public boolean hasLines() {
+		try {
+			return reader.hasNext();
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura dopo la riga " + lineNumber, e);
+		}
+	}
+
+	public void skipLine() {
+		if(hasLines()) {
+			readNextLine();
+		}
+	}
+
+	/**
+	 * Parses all the remaining lines, closing the source at the end
+	 * @param predicate the consumer of the mapped records
+	 */
+	public void parse(Predicate<T> predicate) {
+		try {
+			while (hasLines()) {
+				DelimitedRecord fields = readNextRecord();
+				RecordMapper<T> recordMapper = recordMappers[recordTypeIndex];
+				if (recordMapper != null) {
+					predicate.apply(recordMapper.mapRecord(fields));
+				}
+			}
+		} finally {
+			close();
+		}
+	}
+
+	public Integer getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return the type of the last record read
+	 */
+	public RecordType getRecordType() {
+		return recordTypeIndex >= 0 ? recordTypes.get(recordTypeIndex) : null;
+	}
+
+	@Override
+	public void close() {
+		IOUtils.closeQuietly(source);
+	}
+
+	/**
+	 * Reads the next line, slicing the fields of its record type
+	 * @return the fields, valid until the next line is read
+	 */
+	protected DelimitedRecord readNextRecord() {
+		readNextLine();
+		ByteBuffer buffer = line.getBuffer();
+		int start = line.getStart(0);
+		int end = line.getEnd(0);
+		int index = findRecordType(buffer, start, end);
+		if (index < 0) {
+			throw new IllegalStateException("Tipo record non riconosciuto alla riga " + lineNumber);
+		}
+		recordTypeIndex = index;
+		record.reset(buffer);
+		record.setAscii(line.isAscii());
+		int[] fieldOffsets = offsets[index];
+		int[] fieldLengths = lengths[index];
+		FieldType[] fieldTypes = types[index];
+		for (int i = 0; i < fieldOffsets.length; i++) {
+			int fieldStart = Math.min(start + fieldOffsets[i], end);
+			int fieldEnd = Math.min(fieldStart + fieldLengths[i], end);
+			while (fieldEnd > fieldStart && buffer.get(fieldEnd - 1) == ' ') {
+				fieldEnd--;
+			}
+			if (fieldTypes[i] == FieldType.NUMERIC) {
+				while (fieldStart < fieldEnd && buffer.get(fieldStart) == ' ') {
+					fieldStart++;
+				}
+			}
+			record.addField(fieldStart, fieldEnd);
+		}
+		return record;
+	}
+
+	private int findRecordType(ByteBuffer buffer, int start, int end) {
+		for (int i = 0; i < discriminators.length; i++) {
+			byte[] discriminator = discriminators[i];
+			if (discriminator.length <= end - start) {
+				int j = 0;
+				while (j < discriminator.length && buffer.get(start + j) == discriminator[j]) {
+					j++;
+				}
+				if (j == discriminator.length) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void readNextLine() {
+		lineNumber++;
+		try {
+			reader.next();
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura alla riga " + lineNumber, e);
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.Serializable;
+
+/**
+ * Error of a line of an import, as recorded by the {@link BatchImportPipeline}
+ */
+public class ImportError implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long lineNumber;
+	private final String line;
+	private final String message;
+
+	public ImportError(long lineNumber, String line, String message) {
+		this.lineNumber = lineNumber;
+		this.line = line;
+		this.message = message;
+	}
+
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	public String getLine() {
+		return line;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return "Riga " + lineNumber + ": " + message;
+	}
+
+}
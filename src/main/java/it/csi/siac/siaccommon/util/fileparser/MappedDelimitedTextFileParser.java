@@ -0,0 +1,117 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import it.csi.siac.siaccommon.util.collections.Predicate;
+
+/**
+ * Parser of delimited files working on a memory mapping of the file, for the large files.
+ * <p>
+ * Unlike {@link DelimitedTextFileParser}, no <code>String</code> is created for the lines: the delimiters and the newlines
+ * are found directly on the bytes, and the fields are exposed to a {@link RecordMapper} as views, decoded only if read.
+ * A {@link LineMapper} can be used as well, decoding all the fields.
+ * <br>
+ * The charset must encode the delimiter and the newline as in ASCII (e.g. UTF-8, ISO-8859-1, windows-1252).
+ * Lines can end with either <code>\n</code> or <code>\r\n</code>. A UTF-8 byte order mark at the beginning of the file is skipped.
+ */
+public class MappedDelimitedTextFileParser<T> implements Closeable
+{
+	private final RandomAccessFile file;
+	private final ByteDelimitedRecord record;
+	private final MappedRecordReader reader;
+	private RecordMapper<T> recordMapper;
+	private Integer lineNumber = 0;
+
+	public MappedDelimitedTextFileParser(File file, char delimiter) throws IOException {
+		this(file, delimiter, StandardCharsets.UTF_8);
+	}
+
+	public MappedDelimitedTextFileParser(File file, char delimiter, Charset charset) throws IOException {
+		this(file, delimiter, charset, MappedRecordReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	MappedDelimitedTextFileParser(File file, char delimiter, Charset charset, int windowSize) throws IOException {
+		byte delimiterByte = MappedRecordReader.toDelimiterByte(delimiter, charset);
+		this.file = new RandomAccessFile(file, "r");
+		this.record = new ByteDelimitedRecord(charset);
+		this.reader = new MappedRecordReader(this.file.getChannel(), 0L, this.file.length(), delimiterByte, record, windowSize);
+	}
+
+	public void setRecordMapper(RecordMapper<T> recordMapper) {
+		this.recordMapper = recordMapper;
+	}
+
+	public void setLineMapper(LineMapper<T> lineMapper) {
+		this.recordMapper = toRecordMapper(lineMapper);
+	}
+
+	public boolean hasLines() {
+		try {
+			return reader.hasNext();
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura dopo la riga " + lineNumber, e);
+		}
+	}
+
+	public void skipLine() {
+		if(hasLines()) {
+			readNextRecord();
+		}
+	}
+
+	/**
+	 * Parses all the remaining lines, closing the file at the end
+	 * @param predicate the consumer of the mapped lines
+	 */
+	public void parse(Predicate<T> predicate) {
+		try {
+			while (hasLines()) {
+				predicate.apply(recordMapper.mapRecord(readNextRecord()));
+			}
+		} finally {
+			close();
+		}
+	}
+
+	public Integer getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			// Read-only file: nothing to lose
+		}
+	}
+
+	static <T> RecordMapper<T> toRecordMapper(final LineMapper<T> lineMapper) {
+		return new RecordMapper<T>() {
+			@Override
+			public T mapRecord(DelimitedRecord record) {
+				return lineMapper.mapValues(record.toArray());
+			}
+		};
+	}
+
+	protected DelimitedRecord readNextRecord() {
+		lineNumber++;
+		try {
+			reader.next();
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura alla riga " + lineNumber, e);
+		}
+		return record;
+	}
+
+}
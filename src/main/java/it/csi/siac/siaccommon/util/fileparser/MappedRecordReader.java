@@ -0,0 +1,149 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reader of the records of a byte range of a file, scanning for delimiters and newlines directly on a memory mapping.
+ * <p>
+ * The range is mapped in windows, so that files larger than 2 GB can be read; a record crossing the end of a window
+ * is read again from a window starting at the record itself. The range must start at the beginning of a record.
+ * With {@link #NO_DELIMITER}, each line is read as a record of a single field. A UTF-8 byte order mark at the beginning
+ * of the file is skipped.
+ */
+final class MappedRecordReader implements ByteRecordReader {
+
+	static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+	/** Delimiter matching no byte */
+	static final int NO_DELIMITER = 0x100;
+
+	private final FileChannel channel;
+	private final long end;
+	private final int windowSize;
+	private final int delimiter;
+	private final ByteDelimitedRecord record;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int position;
+	private boolean bomChecked;
+
+	MappedRecordReader(FileChannel channel, long start, long end, int delimiter, ByteDelimitedRecord record, int windowSize) {
+		this.channel = channel;
+		this.end = end;
+		this.delimiter = delimiter;
+		this.record = record;
+		this.windowSize = windowSize;
+		this.windowStart = start;
+	}
+
+	/**
+	 * Checks that the delimiter can be found on the bytes of the charset
+	 * @return the byte of the delimiter
+	 */
+	static byte toDelimiterByte(char delimiter, Charset charset) {
+		byte[] encoded = (String.valueOf(delimiter) + "\n").getBytes(charset);
+		if(delimiter >= 0x80 || encoded.length != 2 || encoded[0] != delimiter || encoded[1] != '\n') {
+			throw new IllegalArgumentException("Delimitatore '" + delimiter + "' non supportato per il charset " + charset);
+		}
+		return (byte) delimiter;
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		if(!bomChecked) {
+			skipBom();
+		}
+		return windowStart + position < end;
+	}
+
+	/**
+	 * Skips the UTF-8 byte order mark, if the range starts at the beginning of the file
+	 */
+	private void skipBom() throws IOException {
+		bomChecked = true;
+		if(windowStart == 0L && end >= 3) {
+			map(0L);
+			if(window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB && window.get(2) == (byte) 0xBF) {
+				position = 3;
+			}
+		}
+	}
+
+	/**
+	 * @return the offset in the file of the next record
+	 */
+	long getOffset() {
+		return windowStart + position;
+	}
+
+	/**
+	 * Reads the next record in the {@link ByteDelimitedRecord}
+	 * @return whether a record was read
+	 */
+	@Override
+	public boolean next() throws IOException {
+		if(!hasNext()) {
+			return false;
+		}
+		if(window == null || position == window.limit()) {
+			map(windowStart + position);
+		}
+		while(!scan()) {
+			if(position == 0) {
+				throw new IllegalStateException("Record all'offset " + windowStart + " piu' lungo di " + windowSize + " byte");
+			}
+			map(windowStart + position);
+		}
+		return true;
+	}
+
+	private void map(long offset) throws IOException {
+		windowStart = offset;
+		position = 0;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, end - offset));
+	}
+
+	/**
+	 * Scans a record from the current position
+	 * @return whether the record is complete in the current window
+	 */
+	private boolean scan() {
+		MappedByteBuffer buffer = window;
+		int limit = buffer.limit();
+		boolean lastWindow = windowStart + limit == end;
+		record.reset(buffer);
+		int fieldStart = position;
+		int bits = 0;
+		for(int i = position; i < limit; i++) {
+			byte b = buffer.get(i);
+			bits |= b;
+			if(b == delimiter) {
+				record.addField(fieldStart, i);
+				fieldStart = i + 1;
+			} else if(b == '\n') {
+				int fieldEnd = i > fieldStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+				record.addField(fieldStart, fieldEnd);
+				record.setAscii(bits >= 0);
+				position = i + 1;
+				return true;
+			}
+		}
+		if(!lastWindow) {
+			return false;
+		}
+		// Last record, without a trailing newline
+		int fieldEnd = limit > fieldStart && buffer.get(limit - 1) == '\r' ? limit - 1 : limit;
+		record.addField(fieldStart, fieldEnd);
+		record.setAscii(bits >= 0);
+		position = limit;
+		return true;
+	}
+
+}
@@ -0,0 +1,370 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.io.IOUtils;
+
+import it.csi.siac.siaccommon.util.collections.Predicate;
+
+/**
+ * Parser of delimited files splitting the file in chunks, aligned to the lines, which are parsed in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * By default every parse runs on a dedicated pool, sized to the parallelism and shut down at the end of the parse: the tasks
+ * block on the file IO, and must not starve the other users of the common pool. A pool shared with other users can be set
+ * with {@link #setPool(ForkJoinPool)}, and is not shut down by the parser.
+ * <br>
+ * By default the mapped lines are passed to the predicate in the order of the file, on the calling thread: the chunks are
+ * parsed ahead by a bounded number of tasks, and consumed in order. In unordered mode the predicate is called by the
+ * tasks themselves as soon as the lines are mapped, and must be thread-safe.
+ * <br>
+ * The mapper is called concurrently, and must be thread-safe.
+ * {@link #getLineNumber()} returns the number of the line being passed to the predicate, on the thread calling the predicate,
+ * and the number of the failing line after the parse has failed.
+ * <br>
+ * As for {@link MappedDelimitedTextFileParser}, fields spanning multiple lines are not supported.
+ */
+public class ParallelDelimitedTextFileParser<T>
+{
+	public static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+
+	private final File file;
+	private final byte delimiter;
+	private final Charset charset;
+	private ForkJoinPool pool;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+	private boolean ordered = true;
+	private RecordMapper<T> recordMapper;
+	private volatile Integer lineNumber = 0;
+	private volatile boolean failed;
+	private final ThreadLocal<int[]> currentLineNumber = new ThreadLocal<int[]>();
+
+	public ParallelDelimitedTextFileParser(File file, char delimiter) {
+		this(file, delimiter, StandardCharsets.UTF_8);
+	}
+
+	public ParallelDelimitedTextFileParser(File file, char delimiter, Charset charset) {
+		this.delimiter = MappedRecordReader.toDelimiterByte(delimiter, charset);
+		this.file = file;
+		this.charset = charset;
+	}
+
+	public void setRecordMapper(RecordMapper<T> recordMapper) {
+		this.recordMapper = recordMapper;
+	}
+
+	public void setLineMapper(LineMapper<T> lineMapper) {
+		this.recordMapper = MappedDelimitedTextFileParser.toRecordMapper(lineMapper);
+	}
+
+	/**
+	 * @param pool the pool shared with other users, not shut down by the parser; <code>null</code> for a dedicated pool on every parse (default)
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @param parallelism the parallelism of the dedicated pool (default the number of available processors)
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelismo non valido: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	public void setChunkSize(long chunkSize) {
+		if(chunkSize <= 0L) {
+			throw new IllegalArgumentException("Dimensione dei blocchi non valida: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param ordered whether the lines are to be passed to the predicate in the order of the file (default <code>true</code>)
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	public void parse(Predicate<T> predicate) {
+		RandomAccessFile raf = null;
+		ForkJoinPool executor = pool != null ? pool : new ForkJoinPool(parallelism);
+		lineNumber = 0;
+		failed = false;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			long[] boundaries = split(channel);
+			if(ordered) {
+				parseOrdered(executor, channel, boundaries, predicate);
+			} else {
+				parseUnordered(executor, channel, boundaries, predicate);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura del file " + file, e);
+		} finally {
+			if(executor != pool) {
+				// Dedicated pool: the tasks still queued after a failure are discarded
+				executor.shutdownNow();
+			}
+			IOUtils.closeQuietly(raf);
+		}
+	}
+
+	public Integer getLineNumber() {
+		int[] current = currentLineNumber.get();
+		return current != null ? Integer.valueOf(current[0]) : lineNumber;
+	}
+
+	/**
+	 * Splits the file in chunks of about the chunk size, ending with a newline
+	 * @return the boundaries of the chunks, from 0 to the file size
+	 */
+	private long[] split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(Long.valueOf(0L));
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long start = 0L;
+		while(start + chunkSize < size) {
+			long boundary = nextLineStart(channel, start + chunkSize - 1, buffer);
+			if(boundary >= size) {
+				break;
+			}
+			boundaries.add(Long.valueOf(boundary));
+			start = boundary;
+		}
+		boundaries.add(Long.valueOf(size));
+		long[] result = new long[boundaries.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = boundaries.get(i).longValue();
+		}
+		return result;
+	}
+
+	private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+		long offset = position;
+		while(true) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if(read < 0) {
+				return channel.size();
+			}
+			for(int i = 0; i < read; i++) {
+				if(buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+	}
+
+	private void parseOrdered(ForkJoinPool pool, FileChannel channel, long[] boundaries, Predicate<T> predicate) {
+		int chunks = boundaries.length - 1;
+		// Reordering buffer: the chunks parsed ahead, waiting to be consumed in order
+		int aheadLimit = pool.getParallelism() * 2;
+		Deque<ForkJoinTask<MappedChunk<T>>> ahead = new ArrayDeque<ForkJoinTask<MappedChunk<T>>>();
+		int submitted = 0;
+		int base = 0;
+		try {
+			for(int i = 0; i < chunks; i++) {
+				for(; submitted < chunks && submitted < i + aheadLimit; submitted++) {
+					ahead.add(pool.submit(new MapChunkTask(channel, boundaries[submitted], boundaries[submitted + 1])));
+				}
+				MappedChunk<T> chunk = ahead.poll().join();
+				for(int j = 0; j < chunk.values.size(); j++) {
+					lineNumber = base + j + 1;
+					predicate.apply(chunk.values.get(j));
+				}
+				if(chunk.failure != null) {
+					lineNumber = base + chunk.values.size() + 1;
+					throw chunk.failure;
+				}
+				base += chunk.values.size();
+			}
+		} finally {
+			for(ForkJoinTask<MappedChunk<T>> task : ahead) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	private void parseUnordered(ForkJoinPool pool, FileChannel channel, long[] boundaries, Predicate<T> predicate) {
+		int chunks = boundaries.length - 1;
+		List<ForkJoinTask<Integer>> counts = new ArrayList<ForkJoinTask<Integer>>(chunks);
+		for(int i = 0; i < chunks; i++) {
+			counts.add(pool.submit(new CountLinesTask(channel, boundaries[i], boundaries[i + 1])));
+		}
+		List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>(chunks);
+		try {
+			int base = 0;
+			for(int i = 0; i < chunks; i++) {
+				tasks.add(pool.submit(new ApplyChunkTask(channel, boundaries[i], boundaries[i + 1], base, predicate)));
+				base += counts.get(i).join().intValue();
+			}
+			for(ForkJoinTask<Void> task : tasks) {
+				task.join();
+			}
+		} finally {
+			for(ForkJoinTask<Void> task : tasks) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	private MappedRecordReader newReader(FileChannel channel, long start, long end, ByteDelimitedRecord record) {
+		return new MappedRecordReader(channel, start, end, delimiter, record, MappedRecordReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	private static final class MappedChunk<T> {
+		private final List<T> values = new ArrayList<T>();
+		private RuntimeException failure;
+	}
+
+	/**
+	 * Maps the lines of a chunk, stopping at the first failure
+	 */
+	private final class MapChunkTask extends RecursiveTask<MappedChunk<T>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+
+		MapChunkTask(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected MappedChunk<T> compute() {
+			MappedChunk<T> chunk = new MappedChunk<T>();
+			ByteDelimitedRecord record = new ByteDelimitedRecord(charset);
+			MappedRecordReader reader = newReader(channel, start, end, record);
+			try {
+				while(reader.next()) {
+					chunk.values.add(recordMapper.mapRecord(record));
+				}
+			} catch (IOException e) {
+				chunk.failure = new IllegalStateException("Errore di lettura del file " + file, e);
+			} catch (RuntimeException e) {
+				chunk.failure = e;
+			}
+			return chunk;
+		}
+	}
+
+	/**
+	 * Maps the lines of a chunk, passing them to the predicate
+	 */
+	private final class ApplyChunkTask extends RecursiveTask<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+		private final int base;
+		private final Predicate<T> predicate;
+
+		ApplyChunkTask(FileChannel channel, long start, long end, int base, Predicate<T> predicate) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.base = base;
+			this.predicate = predicate;
+		}
+
+		@Override
+		protected Void compute() {
+			ByteDelimitedRecord record = new ByteDelimitedRecord(charset);
+			MappedRecordReader reader = newReader(channel, start, end, record);
+			int[] current = new int[] {base};
+			currentLineNumber.set(current);
+			try {
+				while(reader.hasNext() && !failed) {
+					current[0]++;
+					reader.next();
+					predicate.apply(recordMapper.mapRecord(record));
+				}
+			} catch (IOException e) {
+				failedAt(current[0]);
+				throw new IllegalStateException("Errore di lettura del file " + file, e);
+			} catch (RuntimeException e) {
+				failedAt(current[0]);
+				throw e;
+			} finally {
+				currentLineNumber.remove();
+			}
+			return null;
+		}
+
+		private void failedAt(int failingLineNumber) {
+			failed = true;
+			synchronized (ParallelDelimitedTextFileParser.this) {
+				if(lineNumber.intValue() == 0 || failingLineNumber < lineNumber.intValue()) {
+					lineNumber = failingLineNumber;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the lines of a chunk
+	 */
+	private final class CountLinesTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+
+		CountLinesTask(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Integer compute() {
+			int count = 0;
+			try {
+				for(long offset = start; offset < end; offset += MappedRecordReader.DEFAULT_WINDOW_SIZE) {
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MappedRecordReader.DEFAULT_WINDOW_SIZE, end - offset));
+					for(int i = 0, limit = buffer.limit(); i < limit; i++) {
+						if(buffer.get(i) == '\n') {
+							count++;
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Errore di lettura del file " + file, e);
+			}
+			return Integer.valueOf(count);
+		}
+	}
+
+}
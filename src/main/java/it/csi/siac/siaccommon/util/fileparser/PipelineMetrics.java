@@ -0,0 +1,119 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.Serializable;
+
+/**
+ * Immutable snapshot of the metrics of a {@link PipelinedTextFileParser}.
+ * <p>
+ * The times are in nanoseconds; the time of a stage is the time spent working on the lines, waits on the queues excluded.
+ */
+public final class PipelineMetrics implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long linesRead;
+	private final long linesMapped;
+	private final long linesConsumed;
+	private final long readTime;
+	private final long mapTime;
+	private final long consumeTime;
+	private final int mapperQueueDepth;
+	private final int consumerQueueDepth;
+	private final long elapsedTime;
+
+	public PipelineMetrics(long linesRead, long linesMapped, long linesConsumed, long readTime, long mapTime, long consumeTime,
+			int mapperQueueDepth, int consumerQueueDepth, long elapsedTime) {
+		this.linesRead = linesRead;
+		this.linesMapped = linesMapped;
+		this.linesConsumed = linesConsumed;
+		this.readTime = readTime;
+		this.mapTime = mapTime;
+		this.consumeTime = consumeTime;
+		this.mapperQueueDepth = mapperQueueDepth;
+		this.consumerQueueDepth = consumerQueueDepth;
+		this.elapsedTime = elapsedTime;
+	}
+
+	public long getLinesRead() {
+		return linesRead;
+	}
+
+	public long getLinesMapped() {
+		return linesMapped;
+	}
+
+	public long getLinesConsumed() {
+		return linesConsumed;
+	}
+
+	/**
+	 * @return the time spent reading and splitting the lines
+	 */
+	public long getReadTime() {
+		return readTime;
+	}
+
+	/**
+	 * @return the time spent mapping the lines, summed over the mappers
+	 */
+	public long getMapTime() {
+		return mapTime;
+	}
+
+	/**
+	 * @return the time spent in the consumer
+	 */
+	public long getConsumeTime() {
+		return consumeTime;
+	}
+
+	/**
+	 * @return the number of chunks of lines waiting for a mapper
+	 */
+	public int getMapperQueueDepth() {
+		return mapperQueueDepth;
+	}
+
+	/**
+	 * @return the number of chunks of mapped lines waiting for the consumer
+	 */
+	public int getConsumerQueueDepth() {
+		return consumerQueueDepth;
+	}
+
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * @return the number of lines consumed per second
+	 */
+	public double getThroughput() {
+		return elapsedTime == 0L ? 0.0 : linesConsumed * 1e9 / elapsedTime;
+	}
+
+	public double getAverageReadTime() {
+		return linesRead == 0L ? 0.0 : (double) readTime / linesRead;
+	}
+
+	public double getAverageMapTime() {
+		return linesMapped == 0L ? 0.0 : (double) mapTime / linesMapped;
+	}
+
+	public double getAverageConsumeTime() {
+		return linesConsumed == 0L ? 0.0 : (double) consumeTime / linesConsumed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PipelineMetrics[linesRead=%d, linesMapped=%d, linesConsumed=%d, throughput=%.0f/s, "
+				+ "avgRead=%.0fns, avgMap=%.0fns, avgConsume=%.0fns, mapperQueueDepth=%d, consumerQueueDepth=%d]",
+				linesRead, linesMapped, linesConsumed, getThroughput(), getAverageReadTime(), getAverageMapTime(),
+				getAverageConsumeTime(), mapperQueueDepth, consumerQueueDepth);
+	}
+
+}
@@ -0,0 +1,280 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.csi.siac.siaccommon.util.collections.Predicate;
+
+/**
+ * Parser running the reading, the mapping and the consumption of the lines of a {@link TextFileParser} as a pipeline.
+ * <p>
+ * A reader thread reads and splits the lines in chunks, which are mapped by a number of mapper threads; the mapped lines
+ * are passed to the predicate on the calling thread, in the order of the file. The stages are connected by bounded queues,
+ * and the number of chunks in the pipeline is limited by {@link #setQueueCapacity(int)}: when the consumer is slower, the
+ * reader waits, so that the memory used does not depend on the size of the file.
+ * <br>
+ * The mapper is called concurrently, and must be thread-safe. The metrics of the stages are available from
+ * {@link #getMetrics()}, during and after the parse.
+ * {@link #getLineNumber()} returns the number of the line being passed to the predicate, and the number of the failing line after the parse has failed.
+ */
+public class PipelinedTextFileParser<T>
+{
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+
+	private final TextFileParser<T> parser;
+	private LineMapper<T> lineMapper;
+	private int mappers = Runtime.getRuntime().availableProcessors();
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int queueCapacity;
+
+	private volatile BlockingQueue<Chunk<T>> mapperQueue;
+	private volatile BlockingQueue<Chunk<T>> consumerQueue;
+	private volatile int lineNumber;
+	private volatile long linesRead;
+	private volatile long readTime;
+	private final AtomicLong linesMapped = new AtomicLong();
+	private final AtomicLong mapTime = new AtomicLong();
+	private volatile long linesConsumed;
+	private volatile long consumeTime;
+	private volatile long startTime;
+	private volatile long endTime;
+
+	/**
+	 * @param parser the parser of the lines, whose line mapper is used unless {@link #setLineMapper(LineMapper)} is called
+	 */
+	public PipelinedTextFileParser(TextFileParser<T> parser) {
+		this.parser = parser;
+		this.lineMapper = parser.lineMapper;
+	}
+
+	public void setLineMapper(LineMapper<T> lineMapper) {
+		this.lineMapper = lineMapper;
+	}
+
+	public void setMappers(int mappers) {
+		if(mappers <= 0) {
+			throw new IllegalArgumentException("Numero di mapper non valido: " + mappers);
+		}
+		this.mappers = mappers;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		if(chunkSize <= 0) {
+			throw new IllegalArgumentException("Dimensione dei blocchi non valida: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param queueCapacity the maximum number of chunks in the pipeline (by default twice the number of mappers)
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if(queueCapacity <= 0) {
+			throw new IllegalArgumentException("Capacita' della coda non valida: " + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	public void parse(Predicate<T> predicate) {
+		int capacity = queueCapacity > 0 ? queueCapacity : mappers * 2;
+		Semaphore window = new Semaphore(capacity);
+		mapperQueue = new ArrayBlockingQueue<Chunk<T>>(capacity + mappers);
+		// One more for the end of the file
+		consumerQueue = new ArrayBlockingQueue<Chunk<T>>(capacity + 1);
+		resetMetrics();
+
+		List<Thread> threads = new ArrayList<Thread>(mappers + 1);
+		threads.add(new Thread(new Reader(window), "pipeline-reader"));
+		for(int i = 0; i < mappers; i++) {
+			threads.add(new Thread(new Mapper(), "pipeline-mapper-" + i));
+		}
+		for(Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		try {
+			consume(predicate, window);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Elaborazione interrotta alla riga " + lineNumber, e);
+		} finally {
+			endTime = System.nanoTime();
+			// Stops the stages still waiting, in case of failure
+			for(Thread thread : threads) {
+				thread.interrupt();
+			}
+		}
+	}
+
+	private void consume(Predicate<T> predicate, Semaphore window) throws InterruptedException {
+		// Reordering buffer: the chunks mapped ahead of the next one
+		Map<Long, Chunk<T>> ahead = new HashMap<Long, Chunk<T>>();
+		long next = 0L;
+		while(true) {
+			Chunk<T> chunk = ahead.remove(Long.valueOf(next));
+			if(chunk == null) {
+				chunk = consumerQueue.take();
+				if(chunk.sequence != next) {
+					ahead.put(Long.valueOf(chunk.sequence), chunk);
+					continue;
+				}
+			}
+			if(chunk.end) {
+				return;
+			}
+			long start = System.nanoTime();
+			for(int j = 0; j < chunk.values.size(); j++) {
+				lineNumber = chunk.firstLine + j + 1;
+				predicate.apply(chunk.values.get(j));
+			}
+			linesConsumed += chunk.values.size();
+			consumeTime += System.nanoTime() - start;
+			if(chunk.failure != null) {
+				lineNumber = chunk.firstLine + chunk.values.size() + 1;
+				if(chunk.failure instanceof RuntimeException) {
+					throw (RuntimeException) chunk.failure;
+				}
+				if(chunk.failure instanceof Error) {
+					throw (Error) chunk.failure;
+				}
+				throw new IllegalStateException("Errore alla riga " + lineNumber, chunk.failure);
+			}
+			window.release();
+			next++;
+		}
+	}
+
+	public Integer getLineNumber() {
+		return Integer.valueOf(lineNumber);
+	}
+
+	public PipelineMetrics getMetrics() {
+		BlockingQueue<Chunk<T>> mq = mapperQueue;
+		BlockingQueue<Chunk<T>> cq = consumerQueue;
+		long end = endTime != 0L ? endTime : System.nanoTime();
+		return new PipelineMetrics(linesRead, linesMapped.get(), linesConsumed, readTime, mapTime.get(), consumeTime,
+				mq != null ? mq.size() : 0, cq != null ? cq.size() : 0, startTime != 0L ? end - startTime : 0L);
+	}
+
+	private void resetMetrics() {
+		lineNumber = 0;
+		linesRead = 0L;
+		readTime = 0L;
+		linesMapped.set(0L);
+		mapTime.set(0L);
+		linesConsumed = 0L;
+		consumeTime = 0L;
+		endTime = 0L;
+		startTime = System.nanoTime();
+	}
+
+	private static final class Chunk<T> {
+		private final long sequence;
+		private final int firstLine;
+		private final boolean end;
+		private List<String[]> lines;
+		private final List<T> values = new ArrayList<T>();
+		/** The failure of a stage, errors included, which must reach the consumer in any case */
+		private Throwable failure;
+
+		Chunk(long sequence, int firstLine, boolean end) {
+			this.sequence = sequence;
+			this.firstLine = firstLine;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Reads the lines in chunks, as long as the window of the pipeline allows
+	 */
+	private final class Reader implements Runnable {
+
+		private final Semaphore window;
+
+		Reader(Semaphore window) {
+			this.window = window;
+		}
+
+		@Override
+		public void run() {
+			long sequence = 0L;
+			int line = 0;
+			try {
+				boolean more = true;
+				while(more) {
+					window.acquire();
+					Chunk<T> chunk = new Chunk<T>(sequence, line, false);
+					chunk.lines = new ArrayList<String[]>(chunkSize);
+					long start = System.nanoTime();
+					try {
+						while(chunk.lines.size() < chunkSize && parser.hasLines()) {
+							chunk.lines.add(parser.parseLine(parser.readNextLine()));
+						}
+						more = parser.hasLines();
+					} catch (Throwable e) {
+						chunk.failure = e;
+						more = false;
+					}
+					readTime += System.nanoTime() - start;
+					linesRead += chunk.lines.size();
+					line += chunk.lines.size();
+					if(chunk.lines.isEmpty() && chunk.failure == null) {
+						window.release();
+					} else {
+						mapperQueue.put(chunk);
+						sequence++;
+					}
+				}
+				consumerQueue.put(new Chunk<T>(sequence, line, true));
+				for(int i = 0; i < mappers; i++) {
+					mapperQueue.put(new Chunk<T>(-1L, 0, true));
+				}
+			} catch (InterruptedException e) {
+				// Pipeline stopped by the consumer
+			}
+		}
+	}
+
+	/**
+	 * Maps the chunks, stopping each at the first failure
+	 */
+	private final class Mapper implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				while(true) {
+					Chunk<T> chunk = mapperQueue.take();
+					if(chunk.end) {
+						return;
+					}
+					long start = System.nanoTime();
+					try {
+						for(String[] values : chunk.lines) {
+							chunk.values.add(lineMapper.mapValues(values));
+						}
+					} catch (Throwable e) {
+						chunk.failure = e;
+					}
+					chunk.lines = null;
+					mapTime.addAndGet(System.nanoTime() - start);
+					linesMapped.addAndGet(chunk.values.size());
+					consumerQueue.put(chunk);
+				}
+			} catch (InterruptedException e) {
+				// Pipeline stopped by the consumer
+			}
+		}
+	}
+
+}
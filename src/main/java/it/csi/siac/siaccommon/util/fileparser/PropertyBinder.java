@@ -0,0 +1,345 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import it.csi.siac.siaccommon.util.date.DateUtil;
+import it.csi.siac.siaccommon.util.number.NumberUtil;
+
+/**
+ * Binder of the fields of a line to the properties of a new instance of a class.
+ * <p>
+ * The property paths (e.g. <code>capitolo.numero</code>) are resolved once, in chains of getters ending with a setter,
+ * invoked through {@link MethodHandle}s; the values are converted to the type of the property by converters cached per type:
+ * <code>String</code>, numbers and <code>BigDecimal</code> (with either the dot or the comma as decimal separator),
+ * <code>Boolean</code>, enums and <code>Date</code> (as per {@link DateUtil#parseDate(String, String)}).
+ * Empty values are set only to the <code>String</code> properties. Indexed and mapped paths, properties of other types,
+ * and paths that cannot be resolved on the declared types of the getters (e.g. through a getter declaring an interface or a
+ * supertype), are delegated to {@link PropertyUtils} without conversion, resolved on the objects at runtime.
+ * <br>
+ * The binder is immutable and thread-safe.
+ */
+public class PropertyBinder<T> implements LineMapper<T>
+{
+	public static final String DEFAULT_DATE_PATTERN = "dd/MM/yyyy";
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final ConcurrentMap<Class<?>, Converter> CONVERTERS = new ConcurrentHashMap<Class<?>, Converter>();
+
+	private final Class<T> cls;
+	private final MethodHandle constructor;
+	private final PropertyPath[] paths;
+	private final String datePattern;
+
+	public PropertyBinder(Class<T> cls, String... properties) {
+		this(cls, DEFAULT_DATE_PATTERN, properties);
+	}
+
+	public PropertyBinder(Class<T> cls, String datePattern, String[] properties) {
+		this.cls = cls;
+		this.datePattern = datePattern;
+		try {
+			this.constructor = MethodHandles.publicLookup().findConstructor(cls, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Costruttore pubblico senza parametri non presente per la classe " + cls.getName(), e);
+		}
+		this.paths = new PropertyPath[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			paths[i] = StringUtils.isNotEmpty(properties[i]) ? compile(properties[i]) : null;
+		}
+	}
+
+	/**
+	 * Binds the values to a new instance
+	 * @param values the values, one per property
+	 * @return the instance
+	 * @throws IllegalArgumentException if the number of values is wrong, or a value cannot be converted or set
+	 */
+	@Override
+	public T mapValues(String[] values) {
+		if (values.length != paths.length) {
+			throw new IllegalArgumentException(String.format("Numero campi non coerente: %d", values.length));
+		}
+		T obj = newInstance();
+		for (int i = 0; i < paths.length; i++) {
+			if (paths[i] != null) {
+				paths[i].set(obj, values[i]);
+			}
+		}
+		return obj;
+	}
+
+	private T newInstance() {
+		try {
+			return cls.cast(constructor.invokeExact());
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Istanziazione della classe " + cls.getName() + " fallita", t);
+		}
+	}
+
+	private PropertyPath compile(String path) {
+		if (StringUtils.containsAny(path, "[(")) {
+			return new PropertyUtilsPath(path);
+		}
+		String[] names = StringUtils.split(path, '.');
+		MethodHandle[] getters = new MethodHandle[names.length - 1];
+		Class<?> type = cls;
+		try {
+			for (int i = 0; i < getters.length; i++) {
+				PropertyDescriptor pd = findProperty(type, names[i], path);
+				if (pd.getReadMethod() == null) {
+					throw new IllegalArgumentException("Proprieta' " + names[i] + " non leggibile nel percorso " + path);
+				}
+				getters[i] = MethodHandles.publicLookup().unreflect(pd.getReadMethod()).asType(GETTER_TYPE);
+				type = pd.getPropertyType();
+			}
+			PropertyDescriptor pd = findProperty(type, names[names.length - 1], path);
+			if (pd.getWriteMethod() == null) {
+				throw new IllegalArgumentException("Proprieta' " + names[names.length - 1] + " non scrivibile nel percorso " + path);
+			}
+			MethodHandle setter = MethodHandles.publicLookup().unreflect(pd.getWriteMethod()).asType(SETTER_TYPE);
+			Converter converter = converterFor(pd.getPropertyType());
+			if (converter == null) {
+				// Type not supported: the value is set as it is
+				return new PropertyUtilsPath(path);
+			}
+			boolean text = pd.getPropertyType() == String.class || pd.getPropertyType() == Object.class;
+			return new CompiledPath(path, names, getters, setter, converter, text);
+		} catch (IllegalArgumentException e) {
+			// Not resolvable on the declared types: resolved on the runtime objects, failing on the lines if not resolvable there either
+			return new PropertyUtilsPath(path);
+		} catch (IllegalAccessException e) {
+			return new PropertyUtilsPath(path);
+		}
+	}
+
+	private static PropertyDescriptor findProperty(Class<?> type, String name, String path) {
+		try {
+			for (PropertyDescriptor pd : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+				if (pd.getName().equals(name)) {
+					return pd;
+				}
+			}
+		} catch (IntrospectionException e) {
+			throw new IllegalArgumentException("Introspezione della classe " + type.getName() + " fallita", e);
+		}
+		throw new IllegalArgumentException("Proprieta' " + name + " non presente nella classe " + type.getName() + " (percorso " + path + ")");
+	}
+
+	private Converter converterFor(Class<?> type) {
+		if (type == Date.class) {
+			return new DateConverter(datePattern);
+		}
+		Class<?> key = type.isPrimitive() ? wrapperOf(type) : type;
+		Converter converter = CONVERTERS.get(key);
+		if (converter == null) {
+			converter = newConverter(key);
+			if (converter == null) {
+				return null;
+			}
+			Converter existing = CONVERTERS.putIfAbsent(key, converter);
+			if (existing != null) {
+				converter = existing;
+			}
+		}
+		return converter;
+	}
+
+	private static Class<?> wrapperOf(Class<?> primitive) {
+		return MethodType.methodType(primitive).wrap().returnType();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Converter newConverter(final Class<?> type) {
+		if (type == String.class || type == Object.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return value;
+				}
+			};
+		}
+		if (type == Integer.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return Integer.valueOf(value.trim());
+				}
+			};
+		}
+		if (type == Long.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return Long.valueOf(value.trim());
+				}
+			};
+		}
+		if (type == Short.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return Short.valueOf(value.trim());
+				}
+			};
+		}
+		if (type == BigDecimal.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return toBigDecimal(value);
+				}
+			};
+		}
+		if (type == Double.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return Double.valueOf(toBigDecimal(value).doubleValue());
+				}
+			};
+		}
+		if (type == BigInteger.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return new BigInteger(value.trim());
+				}
+			};
+		}
+		if (type == Boolean.class) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					String trimmed = value.trim();
+					return Boolean.valueOf("true".equalsIgnoreCase(trimmed) || "S".equalsIgnoreCase(trimmed) || "1".equals(trimmed));
+				}
+			};
+		}
+		if (type.isEnum()) {
+			return new Converter() {
+				@Override
+				public Object convert(String value) {
+					return Enum.valueOf((Class<Enum>) type, value.trim());
+				}
+			};
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a decimal, with the comma as decimal separator if present (and the dot as grouping separator)
+	 */
+	private static BigDecimal toBigDecimal(String value) {
+		String trimmed = value.trim();
+		return trimmed.indexOf(',') >= 0 ? NumberUtil.importoToBigDecimal(trimmed) : new BigDecimal(trimmed);
+	}
+
+	private interface Converter {
+		Object convert(String value);
+	}
+
+	private static final class DateConverter implements Converter {
+		private final String pattern;
+
+		DateConverter(String pattern) {
+			this.pattern = pattern;
+		}
+
+		@Override
+		public Object convert(String value) {
+			return DateUtil.parseDate(value, pattern);
+		}
+	}
+
+	private interface PropertyPath {
+		void set(Object bean, String value);
+	}
+
+	private static final class CompiledPath implements PropertyPath {
+
+		private final String path;
+		private final String[] names;
+		private final MethodHandle[] getters;
+		private final MethodHandle setter;
+		private final Converter converter;
+		private final boolean text;
+
+		CompiledPath(String path, String[] names, MethodHandle[] getters, MethodHandle setter, Converter converter, boolean text) {
+			this.path = path;
+			this.names = names;
+			this.getters = getters;
+			this.setter = setter;
+			this.converter = converter;
+			this.text = text;
+		}
+
+		@Override
+		public void set(Object bean, String value) {
+			if (StringUtils.isEmpty(value) && !text) {
+				return;
+			}
+			Object converted;
+			try {
+				converted = converter.convert(value);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Valore '" + value + "' non valido per la proprieta' " + path + ": " + e.getMessage(), e);
+			}
+			Object target = bean;
+			try {
+				for (int i = 0; i < getters.length; i++) {
+					target = getters[i].invokeExact(target);
+					if (target == null) {
+						throw new IllegalArgumentException("Valore nullo della proprieta' '" + names[i] + "' nel percorso " + path);
+					}
+				}
+				setter.invokeExact(target, converted);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException("Impostazione della proprieta' " + path + " fallita", t);
+			}
+		}
+	}
+
+	private static final class PropertyUtilsPath implements PropertyPath {
+
+		private final String path;
+
+		PropertyUtilsPath(String path) {
+			this.path = path;
+		}
+
+		@Override
+		public void set(Object bean, String value) {
+			try {
+				PropertyUtils.setNestedProperty(bean, path, value);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+		}
+	}
+
+}
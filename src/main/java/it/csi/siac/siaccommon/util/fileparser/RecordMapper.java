@@ -0,0 +1,15 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+/**
+ * Mapper of a record read without decoding its fields in advance.
+ * The record, and the views of its fields, are reused for the next record: they must not be retained by the mapper.
+ */
+public interface RecordMapper<T> {
+
+	public T mapRecord(DelimitedRecord record);
+
+}
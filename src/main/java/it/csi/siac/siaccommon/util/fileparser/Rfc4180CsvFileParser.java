@@ -0,0 +1,115 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+
+import it.csi.siac.siaccommon.util.collections.Predicate;
+
+/**
+ * Parser of CSV files as per RFC 4180, reading back the files written by {@link it.csi.siac.siaccommon.util.file.CsvExportUtil}.
+ * <p>
+ * Unlike {@link CsvFileParser}, fields enclosed in double quotes can contain delimiters, escaped double quotes and newlines.
+ * The file is read as a stream, in a single pass; the fields are exposed to a {@link RecordMapper} as views over a reusable
+ * buffer, and are converted to <code>String</code> only if requested.
+ * <br>
+ * {@link #getLineNumber()} returns the number of the line on which the last record read starts.
+ */
+public class Rfc4180CsvFileParser<T> implements Closeable
+{
+	private final Reader reader;
+	private final CsvTokenizer tokenizer;
+	private RecordMapper<T> recordMapper;
+
+	public Rfc4180CsvFileParser(InputStream in) {
+		this(in, StandardCharsets.UTF_8);
+	}
+
+	public Rfc4180CsvFileParser(InputStream in, Charset charset) {
+		this(in, CsvFileParser.CSV_DELIMITER.charAt(0), charset);
+	}
+
+	/**
+	 * @param in the stream
+	 * @param delimiter the delimiter of the fields
+	 * @param charset the charset of the stream, unless it starts with a byte order mark
+	 */
+	public Rfc4180CsvFileParser(InputStream in, char delimiter, Charset charset) {
+		this.reader = TextReaders.openReader(in, charset);
+		this.tokenizer = new CsvTokenizer(reader, delimiter);
+	}
+
+	public Rfc4180CsvFileParser(File file) throws FileNotFoundException {
+		this(new FileInputStream(file));
+	}
+
+	public Rfc4180CsvFileParser(File file, Charset charset) throws FileNotFoundException {
+		this(new FileInputStream(file), charset);
+	}
+
+	public void setRecordMapper(RecordMapper<T> recordMapper) {
+		this.recordMapper = recordMapper;
+	}
+
+	public void setLineMapper(LineMapper<T> lineMapper) {
+		this.recordMapper = MappedDelimitedTextFileParser.toRecordMapper(lineMapper);
+	}
+
+	public boolean hasLines() {
+		try {
+			return tokenizer.hasNext();
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura dopo la riga " + getLineNumber(), e);
+		}
+	}
+
+	public void skipLine() {
+		if(hasLines()) {
+			readNextRecord();
+		}
+	}
+
+	/**
+	 * Parses all the remaining records, closing the stream at the end
+	 * @param predicate the consumer of the mapped records
+	 */
+	public void parse(Predicate<T> predicate) {
+		try {
+			while (hasLines()) {
+				predicate.apply(recordMapper.mapRecord(readNextRecord()));
+			}
+		} finally {
+			close();
+		}
+	}
+
+	public Integer getLineNumber() {
+		return tokenizer.getRecordLineNumber();
+	}
+
+	@Override
+	public void close() {
+		IOUtils.closeQuietly(reader);
+	}
+
+	protected DelimitedRecord readNextRecord() {
+		try {
+			return tokenizer.next();
+		} catch (IOException e) {
+			throw new IllegalStateException("Errore di lettura dopo la riga " + getLineNumber(), e);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reader of the lines of a stream, each read as a record of a single field over a reusable byte buffer.
+ * <p>
+ * The buffer grows only up to the length of the longest line, so that the stream is read in constant memory.
+ * Lines can end with either <code>\n</code> or <code>\r\n</code>. A UTF-8 byte order mark at the beginning of the stream is skipped.
+ */
+final class StreamLineReader implements ByteRecordReader {
+
+	private final InputStream in;
+	private final ByteDelimitedRecord record;
+
+	private byte[] bytes = new byte[64 * 1024];
+	private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+	private int position;
+	private int limit;
+	private boolean bomChecked;
+
+	StreamLineReader(InputStream in, ByteDelimitedRecord record) {
+		this.in = in;
+		this.record = record;
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		if(!bomChecked) {
+			skipBom();
+		}
+		return position < limit || readMore();
+	}
+
+	/**
+	 * Skips the UTF-8 byte order mark, if present
+	 */
+	private void skipBom() throws IOException {
+		bomChecked = true;
+		while(limit < 3 && readMore()) {
+			// Reads at least the length of the byte order mark
+		}
+		if(limit >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+			position = 3;
+		}
+	}
+
+	@Override
+	public boolean next() throws IOException {
+		if(!hasNext()) {
+			return false;
+		}
+		int i = position;
+		int bits = 0;
+		while(true) {
+			for(; i < limit; i++) {
+				byte b = bytes[i];
+				if(b == '\n') {
+					setLine(position, i, bits);
+					position = i + 1;
+					return true;
+				}
+				bits |= b;
+			}
+			int scanned = i - position;
+			if(!readMore()) {
+				// Last line, without a trailing newline
+				setLine(position, limit, bits);
+				position = limit;
+				return true;
+			}
+			i = position + scanned;
+		}
+	}
+
+	private void setLine(int start, int end, int bits) {
+		int lineEnd = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+		record.reset(buffer);
+		record.addField(start, lineEnd);
+		record.setAscii(bits >= 0);
+	}
+
+	/**
+	 * Reads more bytes, keeping the ones from the current position
+	 * @return whether any byte was read
+	 */
+	private boolean readMore() throws IOException {
+		if(position > 0) {
+			System.arraycopy(bytes, position, bytes, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if(limit == bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			buffer = ByteBuffer.wrap(bytes);
+		}
+		int read;
+		do {
+			read = in.read(bytes, limit, bytes.length - limit);
+		} while(read == 0);
+		if(read < 0) {
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+}
@@ -9,9 +9,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 
 import it.csi.siac.siaccommon.util.collections.Predicate;
@@ -24,16 +23,32 @@ public abstract class TextFileParser<T>
 
 	
 	public TextFileParser(InputStream in) {
-		lineIterator = IOUtils.lineIterator(new InputStreamReader(in));
+		this(in, Charset.defaultCharset());
+	}
+
+	/**
+	 * @param in the stream
+	 * @param charset the charset of the stream, unless it starts with a byte order mark
+	 */
+	public TextFileParser(InputStream in, Charset charset) {
+		lineIterator = TextReaders.lineIterator(in, charset);
 	}
 
 	public TextFileParser(byte[] fileBytes) {
 		this(new ByteArrayInputStream(fileBytes));
 	}
+
+	public TextFileParser(byte[] fileBytes, Charset charset) {
+		this(new ByteArrayInputStream(fileBytes), charset);
+	}
 	
 	public TextFileParser(File file) throws FileNotFoundException {
 		this(new FileInputStream(file));
 	}
+
+	public TextFileParser(File file, Charset charset) throws FileNotFoundException {
+		this(new FileInputStream(file), charset);
+	}
 	
 	public void setLineMapper(LineMapper<T> lineMapper) {
 		this.lineMapper = lineMapper;
@@ -0,0 +1,64 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.fileparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+import org.apache.commons.io.ByteOrderMark;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.commons.io.input.BOMInputStream;
+
+/**
+ * Readers of text streams with an explicit charset, overridden by the byte order mark if present.
+ * <p>
+ * The decoding is left to the {@link java.nio.charset.CharsetDecoder} of the JDK, which already widens the runs of ASCII
+ * and ISO-8859-1 bytes in bulk.
+ */
+final class TextReaders {
+
+	private TextReaders() {
+		// Prevents instantiation
+	}
+
+	/**
+	 * Opens a reader of the stream. A byte order mark (UTF-8, UTF-16LE, UTF-16BE), if present, is skipped and determines the charset
+	 * @param in the stream
+	 * @param charset the charset of the stream, if without byte order mark
+	 * @return the reader
+	 */
+	static Reader newReader(InputStream in, Charset charset) throws IOException {
+		BOMInputStream bomIn = new BOMInputStream(in, ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE);
+		Charset actual = bomIn.hasBOM() ? Charset.forName(bomIn.getBOMCharsetName()) : charset;
+		return new InputStreamReader(bomIn, actual.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE));
+	}
+
+	/**
+	 * Opens a reader of the stream, as per {@link #newReader(InputStream, Charset)}; the stream is closed if its beginning cannot be read
+	 */
+	static Reader openReader(InputStream in, Charset charset) {
+		try {
+			return newReader(in, charset);
+		} catch (IOException e) {
+			IOUtils.closeQuietly(in);
+			throw new IllegalStateException("Errore di lettura dell'inizio del file", e);
+		}
+	}
+
+	/**
+	 * Opens an iterator over the lines of the stream, as per {@link #newReader(InputStream, Charset)}
+	 */
+	static LineIterator lineIterator(InputStream in, Charset charset) {
+		return IOUtils.lineIterator(openReader(in, charset));
+	}
+
+}
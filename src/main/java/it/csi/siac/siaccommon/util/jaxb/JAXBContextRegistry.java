@@ -0,0 +1,272 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.jaxb;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import it.csi.siac.siaccommon.util.threadlocal.ThreadLocalUtil;
+import it.csi.siac.siaccommon.util.threadlocal.starter.ThreadLocalStarter;
+
+/**
+ * Process-wide registry of the {@link JAXBContext}s, with thread-confined pools of marshallers and unmarshallers.
+ * <p>
+ * The creation of a context is among the most expensive operations of JAXB, while the context itself is thread-safe:
+ * the contexts are created once per class, or set of classes, and kept for the lifetime of the classes.
+ * <br>
+ * Marshallers and unmarshallers are not thread-safe, and are cheap to create but not free: each thread keeps one per context,
+ * lent by the <code>acquire</code> methods and given back by the <code>release</code> methods, in a <code>finally</code> block.
+ * A nested acquisition on the same thread, while the first is still in use, obtains a new instance.
+ * The marshallers produce formatted output, as {@link javax.xml.bind.JAXB#marshal(Object, java.io.OutputStream)};
+ * their standard properties, schema, event handler and listener are reset on release, as are the schema, the event handler
+ * and the listener of the unmarshallers. The adapters set on them are not reset: they must be set on every acquisition.
+ * <br>
+ * The pools are registered with {@link ThreadLocalUtil}, so that {@link ThreadLocalUtil#cleanThreadLocals()} releases them,
+ * along with the classes they hold, from the pooled threads of the container.
+ */
+public final class JAXBContextRegistry {
+
+	/** The contexts of the single classes, collected along with the classes */
+	private static final ClassValue<ContextHolder> CONTEXTS = new ClassValue<ContextHolder>() {
+		@Override
+		protected ContextHolder computeValue(Class<?> type) {
+			return new ContextHolder(type);
+		}
+	};
+	/** The contexts of the sets of classes */
+	private static final ConcurrentMap<ClassSetKey, JAXBContext> SET_CONTEXTS = new ConcurrentHashMap<ClassSetKey, JAXBContext>();
+	/** The idle marshallers of the thread, per context */
+	private static final ThreadLocal<Map<JAXBContext, Marshaller>> MARSHALLERS =
+			ThreadLocalUtil.registerThreadLocal(JAXBContextRegistry.class, new PoolStarter<Marshaller>("marshallers"));
+	/** The idle unmarshallers of the thread, per context */
+	private static final ThreadLocal<Map<JAXBContext, Unmarshaller>> UNMARSHALLERS =
+			ThreadLocalUtil.registerThreadLocal(JAXBContextRegistry.class, new PoolStarter<Unmarshaller>("unmarshallers"));
+
+	private JAXBContextRegistry() {
+		// Prevent instantiation
+	}
+
+	/**
+	 * Obtains the context of the class
+	 * @param cls the class
+	 * @return the context, created on the first request
+	 * @throws JAXBException in case the context cannot be created
+	 */
+	public static JAXBContext getContext(Class<?> cls) throws JAXBException {
+		if(cls == null) {
+			throw new NullPointerException("Null class");
+		}
+		return CONTEXTS.get(cls).get();
+	}
+
+	/**
+	 * Obtains the context of the set of classes
+	 * @param classes the classes, in any order
+	 * @return the context, created on the first request
+	 * @throws JAXBException in case the context cannot be created
+	 */
+	public static JAXBContext getContext(Class<?>... classes) throws JAXBException {
+		if(classes.length == 1) {
+			return getContext(classes[0]);
+		}
+		ClassSetKey key = new ClassSetKey(classes);
+		JAXBContext context = SET_CONTEXTS.get(key);
+		if(context == null) {
+			context = JAXBContext.newInstance(classes);
+			JAXBContext existing = SET_CONTEXTS.putIfAbsent(key, context);
+			if(existing != null) {
+				context = existing;
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Lends a marshaller of the context to the current thread
+	 * @param context the context
+	 * @return the marshaller, to be given back with {@link #releaseMarshaller(JAXBContext, Marshaller)}
+	 * @throws JAXBException in case the marshaller cannot be created
+	 */
+	public static Marshaller acquireMarshaller(JAXBContext context) throws JAXBException {
+		Marshaller marshaller = MARSHALLERS.get().remove(context);
+		if(marshaller == null) {
+			marshaller = context.createMarshaller();
+			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+		}
+		return marshaller;
+	}
+
+	/**
+	 * Gives back a marshaller obtained by {@link #acquireMarshaller(JAXBContext)}, resetting its standard properties,
+	 * schema, event handler and listener
+	 * @param context the context
+	 * @param marshaller the marshaller
+	 */
+	public static void releaseMarshaller(JAXBContext context, Marshaller marshaller) {
+		if(marshaller == null) {
+			return;
+		}
+		try {
+			resetProperty(marshaller, Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+			resetProperty(marshaller, Marshaller.JAXB_ENCODING, "UTF-8");
+			resetProperty(marshaller, Marshaller.JAXB_FRAGMENT, Boolean.FALSE);
+			resetProperty(marshaller, Marshaller.JAXB_SCHEMA_LOCATION, null);
+			resetProperty(marshaller, Marshaller.JAXB_NO_NAMESPACE_SCHEMA_LOCATION, null);
+			marshaller.setSchema(null);
+			marshaller.setEventHandler(null);
+			marshaller.setListener(null);
+		} catch (JAXBException e) {
+			// Not reusable: left to the garbage collector
+			return;
+		} catch (UnsupportedOperationException e) {
+			// Not resettable: left to the garbage collector
+			return;
+		}
+		MARSHALLERS.get().put(context, marshaller);
+	}
+
+	/**
+	 * Sets the property of the marshaller back to its value on acquisition, if changed
+	 */
+	private static void resetProperty(Marshaller marshaller, String name, Object value) throws JAXBException {
+		Object current = marshaller.getProperty(name);
+		if(current == null ? value != null : !current.equals(value)) {
+			marshaller.setProperty(name, value);
+		}
+	}
+
+	/**
+	 * Lends an unmarshaller of the context to the current thread
+	 * @param context the context
+	 * @return the unmarshaller, to be given back with {@link #releaseUnmarshaller(JAXBContext, Unmarshaller)}
+	 * @throws JAXBException in case the unmarshaller cannot be created
+	 */
+	public static Unmarshaller acquireUnmarshaller(JAXBContext context) throws JAXBException {
+		Unmarshaller unmarshaller = UNMARSHALLERS.get().remove(context);
+		return unmarshaller != null ? unmarshaller : context.createUnmarshaller();
+	}
+
+	/**
+	 * Gives back an unmarshaller obtained by {@link #acquireUnmarshaller(JAXBContext)}, resetting its schema, event handler and listener
+	 * @param context the context
+	 * @param unmarshaller the unmarshaller
+	 */
+	public static void releaseUnmarshaller(JAXBContext context, Unmarshaller unmarshaller) {
+		if(unmarshaller == null) {
+			return;
+		}
+		try {
+			unmarshaller.setSchema(null);
+			unmarshaller.setEventHandler(null);
+			unmarshaller.setListener(null);
+		} catch (JAXBException e) {
+			// Not reusable: left to the garbage collector
+			return;
+		} catch (UnsupportedOperationException e) {
+			// Not resettable: left to the garbage collector
+			return;
+		}
+		UNMARSHALLERS.get().put(context, unmarshaller);
+	}
+
+	/**
+	 * Starter of the pool of the thread, per context
+	 *
+	 * @param <T> the type of the pooled objects
+	 */
+	private static final class PoolStarter<T> implements ThreadLocalStarter<Map<JAXBContext, T>> {
+
+		/** The name of the pool */
+		private final String name;
+
+		/**
+		 * Constructor
+		 * @param name the name of the pool
+		 */
+		PoolStarter(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public ThreadLocal<Map<JAXBContext, T>> initialize() {
+			return new ThreadLocal<Map<JAXBContext, T>>() {
+				@Override
+				protected Map<JAXBContext, T> initialValue() {
+					return new IdentityHashMap<JAXBContext, T>();
+				}
+			};
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Holder of the context of a class, created lazily so that a failure is not cached
+	 */
+	private static final class ContextHolder {
+		private final Class<?> type;
+		private volatile JAXBContext context;
+
+		ContextHolder(Class<?> type) {
+			this.type = type;
+		}
+
+		JAXBContext get() throws JAXBException {
+			JAXBContext result = context;
+			if(result == null) {
+				synchronized (this) {
+					result = context;
+					if(result == null) {
+						result = JAXBContext.newInstance(type);
+						context = result;
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Key of a set of classes, regardless of their order
+	 */
+	private static final class ClassSetKey {
+		private final Class<?>[] classes;
+		private final int hash;
+
+		ClassSetKey(Class<?>[] classes) {
+			this.classes = classes.clone();
+			Arrays.sort(this.classes, new Comparator<Class<?>>() {
+				@Override
+				public int compare(Class<?> c1, Class<?> c2) {
+					return c1.getName().compareTo(c2.getName());
+				}
+			});
+			this.hash = Arrays.hashCode(this.classes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ClassSetKey && Arrays.equals(classes, ((ClassSetKey) obj).classes);
+		}
+	}
+
+}
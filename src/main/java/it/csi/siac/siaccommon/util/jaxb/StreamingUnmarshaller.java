@@ -0,0 +1,160 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.jaxb;
+
+import java.beans.Introspector;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+
+import it.csi.siac.siaccommon.util.collections.Predicate;
+
+/**
+ * Unmarshaller of the repeating elements of a large XML document, one at a time, walking the document with StAX.
+ * <p>
+ * Only the element being unmarshalled is kept in memory, so that the memory used does not depend on the size of the
+ * document. The elements are matched by local name, at any depth, regardless of the namespace; the rest of the document is skipped.
+ * The encoding is read from the document itself.
+ * <br>
+ * Not thread-safe: the instance must be closed on the thread that created it, to give back the unmarshaller to the
+ * {@link JAXBContextRegistry}. DTDs and external entities are not resolved.
+ */
+public class StreamingUnmarshaller<T> implements Iterator<T>, Closeable {
+
+	private final InputStream in;
+	private final Class<T> elementClass;
+	private final String elementName;
+	private final JAXBContext context;
+	private final XMLStreamReader reader;
+	private Unmarshaller unmarshaller;
+	private boolean positioned;
+	private int count;
+
+	/**
+	 * Creates an unmarshaller of the elements named as per the {@link XmlRootElement} of the class,
+	 * or as the decapitalized simple name of the class
+	 */
+	public StreamingUnmarshaller(InputStream in, Class<T> elementClass) throws JAXBException, XMLStreamException {
+		this(in, elementClass, defaultElementName(elementClass));
+	}
+
+	/**
+	 * @param in the document
+	 * @param elementClass the class of the elements
+	 * @param elementName the local name of the elements
+	 */
+	public StreamingUnmarshaller(InputStream in, Class<T> elementClass, String elementName) throws JAXBException, XMLStreamException {
+		this.in = in;
+		this.elementClass = elementClass;
+		this.elementName = elementName;
+		this.context = JAXBContextRegistry.getContext(elementClass);
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		this.reader = factory.createXMLStreamReader(in);
+		this.unmarshaller = JAXBContextRegistry.acquireUnmarshaller(context);
+	}
+
+	private static String defaultElementName(Class<?> cls) {
+		XmlRootElement root = cls.getAnnotation(XmlRootElement.class);
+		return root != null && !"##default".equals(root.name()) ? root.name() : Introspector.decapitalize(cls.getSimpleName());
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(!positioned && unmarshaller != null) {
+			try {
+				positioned = advance();
+			} catch (XMLStreamException e) {
+				throw new IllegalStateException("Errore di lettura del documento dopo l'elemento " + count, e);
+			}
+		}
+		return positioned;
+	}
+
+	/**
+	 * Moves to the next element to unmarshall
+	 * @return whether an element was found
+	 */
+	private boolean advance() throws XMLStreamException {
+		while(true) {
+			if(reader.isStartElement() && elementName.equals(reader.getLocalName())) {
+				return true;
+			}
+			if(!reader.hasNext()) {
+				return false;
+			}
+			reader.next();
+		}
+	}
+
+	@Override
+	public T next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		positioned = false;
+		count++;
+		try {
+			// The reader is left after the end of the element
+			return unmarshaller.unmarshal(reader, elementClass).getValue();
+		} catch (JAXBException e) {
+			throw new IllegalStateException("Errore di unmarshall dell'elemento " + count + " (" + elementName + ")", e);
+		}
+	}
+
+	/**
+	 * Unmarshalls all the remaining elements, closing the document at the end
+	 * @param predicate the consumer of the elements
+	 */
+	public void parse(Predicate<T> predicate) {
+		try {
+			while(hasNext()) {
+				predicate.apply(next());
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * @return the number of elements unmarshalled
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		if(unmarshaller != null) {
+			JAXBContextRegistry.releaseUnmarshaller(context, unmarshaller);
+			unmarshaller = null;
+		}
+		positioned = false;
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			// The stream is closed anyway
+		}
+		IOUtils.closeQuietly(in);
+	}
+
+}
@@ -4,15 +4,13 @@
 */
 package it.csi.siac.siaccommon.util.log;
 
-import java.io.ByteArrayOutputStream;
-
-import javax.xml.bind.JAXB;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.PropertyException;
 
 import org.apache.log4j.Logger;
 
 import it.csi.siac.siaccommon.model.UserSessionInfo;
+import it.csi.siac.siaccommon.util.JAXBUtility;
 
 public class LogUtil {
 
@@ -169,9 +167,7 @@ public class LogUtil {
 		if (obj == null) {
 			return null;
 		}
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		JAXB.marshal(obj, baos);
-		return baos.toString();
+		return JAXBUtility.marshall(obj);
 
 	}
 
@@ -0,0 +1,121 @@
+/*
+*SPDX-FileCopyrightText: Copyright 2020 | CSI Piemonte
+*SPDX-License-Identifier: EUPL-1.2
+*/
+package it.csi.siac.siaccommon.util.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Process-wide registry of the compiled XSD {@link Schema}s, with thread-confined pools of validators.
+ * <p>
+ * The schemas are compiled once per location, and are thread-safe; the validators are not thread-safe, and each thread
+ * keeps one per schema, lent by {@link #acquireValidator(Schema)} and given back by {@link #releaseValidator(Schema, Validator)},
+ * in a <code>finally</code> block. The validation reads the document as a stream, without loading it in memory.
+ */
+public final class SchemaRegistry {
+
+	/** The schemas, per external form of the location (<code>URL.equals</code> would resolve the host) */
+	private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<String, Schema>();
+	/** The idle validators of the thread, per schema */
+	private static final ThreadLocal<Map<Schema, Validator>> VALIDATORS = new ThreadLocal<Map<Schema, Validator>>() {
+		@Override
+		protected Map<Schema, Validator> initialValue() {
+			return new IdentityHashMap<Schema, Validator>();
+		}
+	};
+
+	private SchemaRegistry() {
+		// Prevent instantiation
+	}
+
+	/**
+	 * Obtains the schema of the XSD
+	 * @param xsd the location of the XSD
+	 * @return the schema, compiled on the first request
+	 * @throws SAXException in case the XSD cannot be compiled
+	 */
+	public static Schema getSchema(URL xsd) throws SAXException {
+		if(xsd == null) {
+			throw new NullPointerException("Null xsd");
+		}
+		String key = xsd.toExternalForm();
+		Schema schema = SCHEMAS.get(key);
+		if(schema == null) {
+			// The factory is not thread-safe
+			SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			schema = sf.newSchema(xsd);
+			Schema existing = SCHEMAS.putIfAbsent(key, schema);
+			if(existing != null) {
+				schema = existing;
+			}
+		}
+		return schema;
+	}
+
+	/**
+	 * Lends a validator of the schema to the current thread
+	 * @param schema the schema
+	 * @return the validator, to be given back with {@link #releaseValidator(Schema, Validator)}
+	 */
+	public static Validator acquireValidator(Schema schema) {
+		Validator validator = VALIDATORS.get().remove(schema);
+		return validator != null ? validator : schema.newValidator();
+	}
+
+	/**
+	 * Gives back a validator obtained by {@link #acquireValidator(Schema)}, resetting its configuration
+	 * @param schema the schema
+	 * @param validator the validator
+	 */
+	public static void releaseValidator(Schema schema, Validator validator) {
+		if(validator != null) {
+			validator.reset();
+			VALIDATORS.get().put(schema, validator);
+		}
+	}
+
+	/**
+	 * Validates the document against the XSD
+	 * @param xsd the location of the XSD
+	 * @param source the document
+	 * @throws SAXException in case the document is not valid
+	 * @throws IOException in case the document cannot be read
+	 */
+	public static void validate(URL xsd, Source source) throws SAXException, IOException {
+		Schema schema = getSchema(xsd);
+		Validator validator = acquireValidator(schema);
+		try {
+			validator.validate(source);
+		} finally {
+			releaseValidator(schema, validator);
+		}
+	}
+
+	/**
+	 * Validates the document against the XSD, reading it as a stream
+	 * @param xsd the location of the XSD
+	 * @param xml the document
+	 * @throws SAXException in case the document is not valid
+	 * @throws IOException in case the document cannot be read
+	 */
+	public static void validate(URL xsd, InputStream xml) throws SAXException, IOException {
+		validate(xsd, new StreamSource(xml));
+	}
+
+}